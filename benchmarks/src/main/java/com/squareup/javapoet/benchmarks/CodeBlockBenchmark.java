@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet.benchmarks;
+
+import com.squareup.javapoet.CodeBlock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static com.squareup.javapoet.benchmarks.Workloads.ARRAY_LIST;
+import static com.squareup.javapoet.benchmarks.Workloads.LIST;
+import static com.squareup.javapoet.benchmarks.Workloads.MODEL;
+import static com.squareup.javapoet.benchmarks.Workloads.STRING;
+
+/** {@code CodeBlock.Builder.add()} and rendering a {@code CodeBlock} on its own. */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class CodeBlockBenchmark {
+  CodeBlock codeBlock;
+
+  @Setup
+  public void setUp() {
+    codeBlock = addStatements();
+  }
+
+  @Benchmark
+  public CodeBlock addStatements() {
+    CodeBlock.Builder builder = CodeBlock.builder();
+    for (int i = 0; i < 100; i++) {
+      builder.addStatement("$T<$T> $N = new $T<>($L)", LIST, STRING, "list" + i, ARRAY_LIST, i);
+      builder.addStatement("$N.add($S + $T.NAME)", "list" + i, "value", MODEL);
+      builder.add("$1N.set($2L, $1N.get($2L))$W.trim();\n", "list" + i, i);
+    }
+    return builder.build();
+  }
+
+  static final CodeBlock.Template DECLARE_LIST =
+      CodeBlock.template("$[$T<$T> $N = new $T<>($L);\n$]");
+  static final CodeBlock.Template ADD_VALUE = CodeBlock.template("$[$N.add($S + $T.NAME);\n$]");
+  static final CodeBlock.Template TRIM =
+      CodeBlock.template("$1N.set($2L, $1N.get($2L))$W.trim();\n");
+
+  /** The same code as {@link #addStatements}, from formats that are parsed only once. */
+  @Benchmark
+  public CodeBlock addTemplates() {
+    CodeBlock.Builder builder = CodeBlock.builder();
+    for (int i = 0; i < 100; i++) {
+      builder.add(DECLARE_LIST, LIST, STRING, "list" + i, ARRAY_LIST, i);
+      builder.add(ADD_VALUE, "list" + i, "value", MODEL);
+      builder.add(TRIM, "list" + i, i);
+    }
+    return builder.build();
+  }
+
+  static final Map<String, Object> NAMED_ARGUMENTS = namedArguments();
+
+  static Map<String, Object> namedArguments() {
+    Map<String, Object> arguments = new LinkedHashMap<>();
+    arguments.put("list", LIST);
+    arguments.put("arrayList", ARRAY_LIST);
+    arguments.put("string", STRING);
+    arguments.put("model", MODEL);
+    arguments.put("name", "values");
+    arguments.put("value", "value");
+    return arguments;
+  }
+
+  @Benchmark
+  public CodeBlock addNamed() {
+    CodeBlock.Builder builder = CodeBlock.builder();
+    for (int i = 0; i < 100; i++) {
+      builder.addNamed("$list:T<$string:T> $name:N = new $arrayList:T<>();\n", NAMED_ARGUMENTS);
+      builder.addNamed("$name:N.add($value:S + $model:T.NAME);\n", NAMED_ARGUMENTS);
+    }
+    return builder.build();
+  }
+
+  @Benchmark
+  public String codeBlockToString() {
+    return codeBlock.toString();
+  }
+}
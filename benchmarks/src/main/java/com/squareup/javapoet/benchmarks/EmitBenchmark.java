@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet.benchmarks;
+
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.benchmarks.Workloads.Workload;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering specs that were built upfront. This exercises {@code CodeWriter} and {@code
+ * LineWrapper}, including the imports pass of {@code JavaFile}. It writes to a {@code
+ * StringBuilder} because {@code toString()} is cached.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class EmitBenchmark {
+  @Param
+  public Workload workload;
+
+  JavaFile javaFile;
+  JavaFile singlePassJavaFile;
+  JavaFile unwrappedJavaFile;
+  Writer writer = new BufferedWriter(new Writer() {
+    @Override public void write(char[] chars, int offset, int length) {
+    }
+
+    @Override public void flush() {
+    }
+
+    @Override public void close() {
+    }
+  });
+
+  @Setup
+  public void setUp() {
+    javaFile = workload.build();
+    singlePassJavaFile = javaFile.toBuilder().singlePass(true).build();
+    unwrappedJavaFile = javaFile.toBuilder().lineWrapping(JavaFile.LineWrapping.NEVER).build();
+  }
+
+  @Benchmark
+  public StringBuilder javaFileWriteTo() throws IOException {
+    StringBuilder out = new StringBuilder();
+    javaFile.writeTo(out);
+    return out;
+  }
+
+  @Benchmark
+  public StringBuilder singlePassJavaFileWriteTo() throws IOException {
+    StringBuilder out = new StringBuilder();
+    singlePassJavaFile.writeTo(out);
+    return out;
+  }
+
+  @Benchmark
+  public StringBuilder unwrappedJavaFileWriteTo() throws IOException {
+    StringBuilder out = new StringBuilder();
+    unwrappedJavaFile.writeTo(out);
+    return out;
+  }
+
+  /** Writing to a reused writer isolates the cost of passing characters to a {@code Writer}. */
+  @Benchmark
+  public Writer javaFileWriteToWriter() throws IOException {
+    javaFile.writeTo(writer);
+    writer.flush();
+    return writer;
+  }
+}
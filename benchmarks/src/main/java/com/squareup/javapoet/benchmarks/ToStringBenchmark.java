@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet.benchmarks;
+
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.benchmarks.Workloads.Workload;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The first and repeated calls to {@code toString()} and {@code hashCode()} on a spec. Specs cache
+ * their rendered code, so only the first call renders. Each first call gets a fresh copy of the
+ * spec; copying happens outside of the measurement, which is fine for operations this slow.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ToStringBenchmark {
+  @Param
+  public Workload workload;
+
+  TypeSpec typeSpec;
+  TypeSpec copy;
+
+  @Setup
+  public void setUp() {
+    typeSpec = workload.build().typeSpec;
+    typeSpec.toString();
+  }
+
+  @Setup(Level.Invocation)
+  public void copy() {
+    copy = typeSpec.toBuilder().build();
+  }
+
+  @Benchmark
+  public String firstToString() {
+    return copy.toString();
+  }
+
+  @Benchmark
+  public String repeatedToString() {
+    return typeSpec.toString();
+  }
+
+  @Benchmark
+  public int firstHashCode() {
+    return copy.hashCode();
+  }
+
+  @Benchmark
+  public int repeatedHashCode() {
+    return typeSpec.hashCode();
+  }
+}
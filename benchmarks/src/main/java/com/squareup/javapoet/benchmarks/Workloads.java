@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet.benchmarks;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.lang.model.element.Modifier;
+
+/** Representative shapes of generated code. */
+public final class Workloads {
+  static final String PACKAGE = "com.example.generated";
+
+  static final ClassName LIST = ClassName.get(List.class);
+  static final ClassName ARRAY_LIST = ClassName.get(ArrayList.class);
+  static final ClassName MAP = ClassName.get(Map.class);
+  static final ClassName STRING = ClassName.get(String.class);
+  static final ClassName OBJECTS = ClassName.get(Objects.class);
+  static final ClassName NULLABLE = ClassName.get("javax.annotation", "Nullable");
+  static final ClassName GENERATED = ClassName.get("javax.annotation", "Generated");
+  static final ClassName MODEL = ClassName.get("com.example.model", "Model");
+  static final ClassName ADAPTER = ClassName.get("com.example.adapters", "JsonAdapter");
+
+  /** A workload that can be built, rendered and written as a benchmark parameter. */
+  public enum Workload {
+    /** A class with many fields and methods with typical method bodies. */
+    WIDE_CLASS {
+      @Override JavaFile build() {
+        return wideClass(40, 200);
+      }
+    },
+
+    /** Types nested many levels deep, with anonymous classes in their bodies. */
+    DEEPLY_NESTED {
+      @Override JavaFile build() {
+        return deeplyNested(12);
+      }
+    },
+
+    /** Methods with long generic signatures that need to be wrapped. */
+    LONG_GENERICS {
+      @Override JavaFile build() {
+        return longGenerics(100);
+      }
+    },
+
+    /** Members with long Javadoc comments that link to other types. */
+    HEAVY_JAVADOC {
+      @Override JavaFile build() {
+        return heavyJavadoc(100);
+      }
+    };
+
+    abstract JavaFile build();
+  }
+
+  private Workloads() {
+  }
+
+  /** Returns {@code count} small files, spread over ten packages. */
+  static List<JavaFile> manyFiles(int count) {
+    List<JavaFile> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      TypeSpec type = wideClass("Class" + i, 5, 10);
+      result.add(JavaFile.builder(PACKAGE + ".package" + (i % 10), type).build());
+    }
+    return result;
+  }
+
+  static JavaFile wideClass(int fieldCount, int methodCount) {
+    return JavaFile.builder(PACKAGE, wideClass("WideClass", fieldCount, methodCount)).build();
+  }
+
+  static TypeSpec wideClass(String name, int fieldCount, int methodCount) {
+    TypeSpec.Builder type = TypeSpec.classBuilder(name)
+        .addAnnotation(generated())
+        .addModifiers(Modifier.PUBLIC, Modifier.FINAL);
+    for (int i = 0; i < fieldCount; i++) {
+      type.addField(FieldSpec.builder(STRING, "field" + i, Modifier.PRIVATE, Modifier.FINAL)
+          .addAnnotation(NULLABLE)
+          .build());
+    }
+    for (int i = 0; i < methodCount; i++) {
+      type.addMethod(MethodSpec.methodBuilder("method" + i)
+          .addModifiers(Modifier.PUBLIC)
+          .returns(ParameterizedTypeName.get(LIST, STRING))
+          .addParameter(MODEL, "model")
+          .addParameter(TypeName.INT, "count")
+          .addCode(methodBody(i))
+          .build());
+    }
+    return type.build();
+  }
+
+  static CodeBlock methodBody(int i) {
+    return CodeBlock.builder()
+        .addStatement("$T.requireNonNull(model, $S)", OBJECTS, "model == null")
+        .addStatement("$T<$T> result = new $T<>(count)", LIST, STRING, ARRAY_LIST)
+        .beginControlFlow("for (int i = 0; i < count; i++)")
+        .beginControlFlow("if (model.isPresent(i))")
+        .addStatement("result.add(model.get(i).toString() + $S)", "suffix " + i)
+        .nextControlFlow("else")
+        .addStatement("result.add($N)", "field" + (i % 10))
+        .endControlFlow()
+        .endControlFlow()
+        .addStatement("$T adapter = $T.get($L, $S)", ADAPTER, ADAPTER, i, "name\n" + i)
+        .addStatement("adapter.write(result, $L)", i * 31L)
+        .addStatement("return result")
+        .build();
+  }
+
+  static JavaFile deeplyNested(int depth) {
+    TypeSpec type = TypeSpec.classBuilder("Level" + depth)
+        .addModifiers(Modifier.STATIC)
+        .addMethod(MethodSpec.methodBuilder("leaf").build())
+        .build();
+    for (int i = depth - 1; i >= 0; i--) {
+      TypeSpec runnable = TypeSpec.anonymousClassBuilder("")
+          .addSuperinterface(Runnable.class)
+          .addMethod(MethodSpec.methodBuilder("run")
+              .addAnnotation(Override.class)
+              .addModifiers(Modifier.PUBLIC)
+              .addStatement("$T.requireNonNull($N)", OBJECTS, "value")
+              .build())
+          .build();
+      TypeSpec.Builder builder = TypeSpec.classBuilder("Level" + i)
+          .addField(MODEL, "value", Modifier.PRIVATE)
+          .addField(FieldSpec.builder(Runnable.class, "runnable", Modifier.FINAL)
+              .initializer("$L", runnable)
+              .build())
+          .addMethod(MethodSpec.methodBuilder("nested")
+              .returns(ClassName.get(PACKAGE, "Level0").nestedClass(type.name))
+              .addStatement("return null")
+              .build())
+          .addType(type);
+      if (i > 0) builder.addModifiers(Modifier.STATIC);
+      type = builder.build();
+    }
+    return JavaFile.builder(PACKAGE, type).build();
+  }
+
+  static JavaFile longGenerics(int methodCount) {
+    TypeVariableName k = TypeVariableName.get("K", ParameterizedTypeName.get(
+        ClassName.get(Comparable.class), TypeVariableName.get("K")));
+    TypeVariableName v = TypeVariableName.get("V", MODEL);
+    TypeName mapOfLists = ParameterizedTypeName.get(MAP, k,
+        ParameterizedTypeName.get(LIST, WildcardTypeName.subtypeOf(v)));
+    TypeName nested = ParameterizedTypeName.get(MAP,
+        ParameterizedTypeName.get(LIST, STRING), mapOfLists);
+
+    TypeSpec.Builder type = TypeSpec.classBuilder("LongGenerics")
+        .addTypeVariable(k)
+        .addTypeVariable(v);
+    for (int i = 0; i < methodCount; i++) {
+      MethodSpec.Builder method = MethodSpec.methodBuilder("transform" + i)
+          .addTypeVariable(TypeVariableName.get("T", nested))
+          .returns(ParameterizedTypeName.get(ADAPTER, nested))
+          .addException(IOException.class);
+      for (int p = 0; p < 4; p++) {
+        method.addParameter(ParameterSpec.builder(nested, "argument" + p)
+            .addAnnotation(NULLABLE)
+            .build());
+      }
+      method.addStatement("return $T.get($T.class, argument0,$Wargument1,$Wargument2,$Wargument3)",
+          ADAPTER, MODEL);
+      type.addMethod(method.build());
+    }
+    return JavaFile.builder(PACKAGE, type.build()).build();
+  }
+
+  static JavaFile heavyJavadoc(int methodCount) {
+    TypeSpec.Builder type = TypeSpec.interfaceBuilder("Documented")
+        .addJavadoc("An interface with a lot of documentation, generated from {@link $T}.\n", MODEL)
+        .addJavadoc("\n")
+        .addJavadoc("<p>Each method is documented with a summary, details and its parameters.\n");
+    for (int i = 0; i < methodCount; i++) {
+      MethodSpec.Builder method = MethodSpec.methodBuilder("documented" + i)
+          .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+          .returns(MODEL)
+          .addJavadoc("Returns the {@link $T} for index $L.\n", MODEL, i)
+          .addJavadoc("\n")
+          .addJavadoc("<p>This method is one of many that are documented at length, so that the\n")
+          .addJavadoc("emitted comment spans several lines. It refers to {@link $T} and\n", ADAPTER)
+          .addJavadoc("{@link $T#get(int)} and quotes {@code $S}.\n", LIST, "value " + i)
+          .addJavadoc("\n")
+          .addJavadoc("@throws $T if the model can't be read.\n", IOException.class);
+      for (int p = 0; p < 3; p++) {
+        method.addParameter(ParameterSpec.builder(STRING, "name" + p)
+            .addJavadoc("the name of the $L part, never null.\n", p)
+            .build());
+      }
+      type.addMethod(method.build());
+    }
+    return JavaFile.builder(PACKAGE, type.build()).build();
+  }
+
+  static AnnotationSpec generated() {
+    return AnnotationSpec.builder(GENERATED)
+        .addMember("value", "$S", "com.example.Processor")
+        .addMember("comments", "$S", "https://example.com/docs")
+        .build();
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet.benchmarks;
+
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.JavaFiles;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Writing many files with {@code JavaFiles.writeAll()} compared to a loop over {@code writeTo()}. */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class WriteAllBenchmark {
+  @Param({"1000"})
+  public int fileCount;
+
+  List<JavaFile> javaFiles;
+  ExecutorService executor;
+  Path directory;
+
+  @Setup
+  public void setUp() throws IOException {
+    javaFiles = Workloads.manyFiles(fileCount);
+    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    directory = Files.createTempDirectory("javapoet-benchmarks");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    executor.shutdown();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public void sequential() throws IOException {
+    for (JavaFile javaFile : javaFiles) {
+      javaFile.writeTo(directory);
+    }
+  }
+
+  @Benchmark
+  public List<Path> writeAll() throws IOException {
+    return JavaFiles.writeAll(javaFiles, directory, executor);
+  }
+}
@@ -17,16 +17,21 @@ package com.squareup.javapoet;
 
 import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.WeakHashMap;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
@@ -44,9 +49,23 @@ import static com.squareup.javapoet.Util.checkNotNull;
 public final class AnnotationSpec {
   public static final String VALUE = "value";
 
+  /** Reflective accessors of annotation types, computed once per type. */
+  private static final ClassValue<ReflectedType> REFLECTED_TYPES = new ClassValue<ReflectedType>() {
+    @Override protected ReflectedType computeValue(Class<?> type) {
+      try {
+        return new ReflectedType(type.asSubclass(Annotation.class));
+      } catch (IllegalAccessException e) {
+        throw new IllegalArgumentException("cannot access members of " + type, e);
+      }
+    }
+  };
+
   public final TypeName type;
   public final Map<String, List<CodeBlock>> members;
 
+  /** Lazily-initialized toString of this spec. */
+  private String cachedString;
+
   private AnnotationSpec(Builder builder) {
     this.type = builder.type;
     this.members = Util.immutableMultimap(builder.members);
@@ -112,33 +131,76 @@ public final class AnnotationSpec {
   }
 
   public static AnnotationSpec get(Annotation annotation, boolean includeDefaultValues) {
-    Builder builder = builder(annotation.annotationType());
     try {
-      Method[] methods = annotation.annotationType().getDeclaredMethods();
+      ReflectedType type = REFLECTED_TYPES.get(annotation.annotationType());
+      Map<Annotation, AnnotationSpec> specs = includeDefaultValues
+          ? type.specsWithDefaultValues
+          : type.specs;
+      AnnotationSpec result = specs.get(annotation);
+      if (result == null) {
+        result = type.reflect(annotation, includeDefaultValues);
+        specs.put(annotation, result);
+      }
+      return result;
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new RuntimeException("Reflecting " + annotation + " failed!", e);
+    }
+  }
+
+  /**
+   * The members of an annotation type, sorted by name, and the specs of annotations of that type
+   * reflected so far. Equal annotations share a spec, which is safe because specs are immutable.
+   */
+  private static final class ReflectedType {
+    final Class<? extends Annotation> annotationType;
+    final String[] names;
+    final MethodHandle[] accessors;
+    final Object[] defaultValues;
+    final Map<Annotation, AnnotationSpec> specs =
+        Collections.synchronizedMap(new WeakHashMap<>());
+    final Map<Annotation, AnnotationSpec> specsWithDefaultValues =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
+    ReflectedType(Class<? extends Annotation> annotationType) throws IllegalAccessException {
+      Method[] methods = annotationType.getDeclaredMethods();
       Arrays.sort(methods, Comparator.comparing(Method::getName));
-      for (Method method : methods) {
-        Object value = method.invoke(annotation);
+      MethodType accessorType = MethodType.methodType(Object.class, Annotation.class);
+      this.annotationType = annotationType;
+      this.names = new String[methods.length];
+      this.accessors = new MethodHandle[methods.length];
+      this.defaultValues = new Object[methods.length];
+      for (int i = 0; i < methods.length; i++) {
+        names[i] = methods[i].getName();
+        accessors[i] = MethodHandles.lookup().unreflect(methods[i]).asType(accessorType);
+        defaultValues[i] = methods[i].getDefaultValue();
+      }
+    }
+
+    AnnotationSpec reflect(Annotation annotation, boolean includeDefaultValues) throws Throwable {
+      Builder builder = builder(annotationType);
+      for (int i = 0; i < names.length; i++) {
+        Object value = (Object) accessors[i].invokeExact(annotation);
         if (!includeDefaultValues) {
-          if (Objects.deepEquals(value, method.getDefaultValue())) {
+          if (Objects.deepEquals(value, defaultValues[i])) {
             continue;
           }
         }
         if (value.getClass().isArray()) {
-          for (int i = 0; i < Array.getLength(value); i++) {
-            builder.addMemberForValue(method.getName(), Array.get(value, i));
+          for (int j = 0; j < Array.getLength(value); j++) {
+            builder.addMemberForValue(names[i], Array.get(value, j));
           }
           continue;
         }
         if (value instanceof Annotation) {
-          builder.addMember(method.getName(), "$L", get((Annotation) value));
+          builder.addMember(names[i], "$L", get((Annotation) value));
           continue;
         }
-        builder.addMemberForValue(method.getName(), value);
+        builder.addMemberForValue(names[i], value);
       }
-    } catch (Exception e) {
-      throw new RuntimeException("Reflecting " + annotation + " failed!", e);
+      return builder.build();
     }
-    return builder.build();
   }
 
   public static AnnotationSpec get(AnnotationMirror annotation) {
@@ -174,22 +236,38 @@ public final class AnnotationSpec {
     if (this == o) return true;
     if (o == null) return false;
     if (getClass() != o.getClass()) return false;
-    return toString().equals(o.toString());
+    AnnotationSpec that = (AnnotationSpec) o;
+    if (structurallyEquals(that)) return true;
+    return hashCode() == that.hashCode() && toString().equals(that.toString());
   }
 
   @Override public int hashCode() {
     return toString().hashCode();
   }
 
+  /** Returns true if this and {@code that} were built from the same parts. */
+  @SuppressWarnings("ReferenceEquality")
+  boolean structurallyEquals(AnnotationSpec that) {
+    if (this == that) return true;
+    return type.equals(that.type)
+        && Util.entriesEqual(members, that.members,
+            (a, b) -> Util.pairwiseEquals(a, b, CodeBlock::structurallyEquals));
+  }
+
   @Override public String toString() {
-    StringBuilder out = new StringBuilder();
-    try {
-      CodeWriter codeWriter = new CodeWriter(out);
-      codeWriter.emit("$L", this);
-      return out.toString();
-    } catch (IOException e) {
-      throw new AssertionError();
+    String result = cachedString;
+    if (result == null) {
+      StringBuilder out = new StringBuilder();
+      try {
+        CodeWriter codeWriter = new CodeWriter(out);
+        codeWriter.emit("$L", this);
+      } catch (IOException e) {
+        throw new AssertionError();
+      }
+      result = out.toString();
+      cachedString = result;
     }
+    return result;
   }
 
   public static final class Builder {
@@ -19,10 +19,8 @@ import java.io.IOException;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import javax.lang.model.element.TypeParameterElement;
 import javax.lang.model.type.ArrayType;
 
 import static com.squareup.javapoet.Util.checkNotNull;
@@ -90,17 +88,16 @@ public final class ArrayTypeName extends TypeName {
 
   /** Returns an array type equivalent to {@code mirror}. */
   public static ArrayTypeName get(ArrayType mirror) {
-    return get(mirror, new LinkedHashMap<>());
+    return get(mirror, TypeNameCache.uncached());
   }
 
-  static ArrayTypeName get(
-      ArrayType mirror, Map<TypeParameterElement, TypeVariableName> typeVariables) {
-    return new ArrayTypeName(get(mirror.getComponentType(), typeVariables));
+  static ArrayTypeName get(ArrayType mirror, TypeNameCache cache) {
+    return new ArrayTypeName(cache.get(mirror.getComponentType()));
   }
 
   /** Returns an array type equivalent to {@code type}. */
   public static ArrayTypeName get(GenericArrayType type) {
-    return get(type, new LinkedHashMap<>());
+    return (ArrayTypeName) TypeName.get(type);
   }
 
   static ArrayTypeName get(GenericArrayType type, Map<Type, TypeVariableName> map) {
@@ -17,10 +17,12 @@ package com.squareup.javapoet;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
@@ -31,11 +33,24 @@ import static com.squareup.javapoet.Util.checkNotNull;
 
 /** A fully-qualified class name for top-level and member classes. */
 public final class ClassName extends TypeName implements Comparable<ClassName> {
+  /**
+   * Class names of classes, computed once per class. Unlike a map, this doesn't keep classes from
+   * being unloaded. Declared first because {@link #OBJECT} needs it.
+   */
+  private static final ClassValue<ClassName> CLASS_NAMES = new ClassValue<ClassName>() {
+    @Override protected ClassName computeValue(Class<?> clazz) {
+      return create(clazz);
+    }
+  };
+
   public static final ClassName OBJECT = ClassName.get(Object.class);
 
   /** The name representing the default Java package. */
   private static final String NO_PACKAGE = "";
 
+  /** Shared class names, or null if interning is disabled. */
+  private static volatile InternPool internPool;
+
   /** The package name of this class, or "" if this is in the default package. */
   final String packageName;
 
@@ -121,10 +136,11 @@ public final class ClassName extends TypeName implements Comparable<ClassName> {
     if (enclosingClassName == null) {
       simpleNames = Collections.singletonList(simpleName);
     } else {
-      List<String> mutableNames = new ArrayList<>();
-      mutableNames.addAll(enclosingClassName().simpleNames());
-      mutableNames.add(simpleName);
-      simpleNames = Collections.unmodifiableList(mutableNames);
+      // Interned instances are shared between threads, so publish this through final fields only.
+      List<String> enclosingNames = enclosingClassName().simpleNames();
+      String[] names = enclosingNames.toArray(new String[enclosingNames.size() + 1]);
+      names[names.length - 1] = simpleName;
+      simpleNames = Collections.unmodifiableList(Arrays.asList(names));
     }
     return simpleNames;
   }
@@ -164,7 +180,10 @@ public final class ClassName extends TypeName implements Comparable<ClassName> {
     checkArgument(!clazz.isPrimitive(), "primitive types cannot be represented as a ClassName");
     checkArgument(!void.class.equals(clazz), "'void' type cannot be represented as a ClassName");
     checkArgument(!clazz.isArray(), "array types cannot be represented as a ClassName");
+    return CLASS_NAMES.get(clazz);
+  }
 
+  private static ClassName create(Class<?> clazz) {
     String anonymousSuffix = "";
     while (clazz.isAnonymousClass()) {
       int lastDollar = clazz.getName().lastIndexOf('$');
@@ -198,6 +217,17 @@ public final class ClassName extends TypeName implements Comparable<ClassName> {
       p = classNameString.indexOf('.', p) + 1;
       checkArgument(p != 0, "couldn't make a guess for %s", classNameString);
     }
+
+    InternPool pool = internPool;
+    if (pool != null) {
+      ClassName pooled = pool.get(classNameString.hashCode());
+      if (pooled != null
+          && pooled.canonicalName.equals(classNameString)
+          && pooled.isBestGuess(p == 0 ? 0 : p - 1)) {
+        return pooled;
+      }
+    }
+
     String packageName = p == 0 ? NO_PACKAGE : classNameString.substring(0, p - 1);
 
     // Add class names like "Map" and "Entry".
@@ -208,7 +238,7 @@ public final class ClassName extends TypeName implements Comparable<ClassName> {
       className = new ClassName(packageName, className, simpleName);
     }
 
-    return className;
+    return pool != null ? pool.intern(className) : className;
   }
 
   /**
@@ -216,16 +246,32 @@ public final class ClassName extends TypeName implements Comparable<ClassName> {
    * {@code "java.util"} and simple names {@code "Map"}, {@code "Entry"} yields {@link Map.Entry}.
    */
   public static ClassName get(String packageName, String simpleName, String... simpleNames) {
+    checkNotNull(packageName, "packageName == null");
+    InternPool pool = internPool;
+    if (pool != null) {
+      ClassName pooled = pool.get(canonicalNameHash(packageName, simpleName, simpleNames));
+      if (pooled != null && pooled.hasNames(packageName, simpleName, simpleNames)) return pooled;
+    }
+
     ClassName className = new ClassName(packageName, null, simpleName);
     for (String name : simpleNames) {
       className = className.nestedClass(name);
     }
-    return className;
+    return pool != null ? pool.intern(className) : className;
   }
 
   /** Returns the class name for {@code element}. */
   public static ClassName get(TypeElement element) {
     checkNotNull(element, "element == null");
+    InternPool pool = internPool;
+    if (pool == null) return create(element);
+
+    ClassName pooled = pool.get(element.getQualifiedName().toString().hashCode());
+    if (pooled != null && pooled.isNameOf(element)) return pooled;
+    return pool.intern(create(element));
+  }
+
+  private static ClassName create(TypeElement element) {
     String simpleName = element.getSimpleName().toString();
 
     return element.getEnclosingElement().accept(new SimpleElementVisitor8<ClassName, Void>() {
@@ -247,6 +293,79 @@ public final class ClassName extends TypeName implements Comparable<ClassName> {
     }, null);
   }
 
+  /**
+   * Makes {@link #get(String, String, String...)}, {@link #bestGuess} and {@link #get(TypeElement)}
+   * return shared instances for class names that they have returned before. Processors that look
+   * up the same types many times save building the same names over and over. The pool holds at
+   * most {@code maximumSize} class names and is emptied when it is full. Interning is disabled by
+   * default; pass 0 to disable it again.
+   */
+  public static void setInternPoolSize(int maximumSize) {
+    checkArgument(maximumSize >= 0, "maximumSize < 0: %s", maximumSize);
+    internPool = maximumSize != 0 ? new InternPool(maximumSize) : null;
+  }
+
+  /**
+   * Returns the {@link String#hashCode} of the canonical name that these names join to, without
+   * joining them.
+   */
+  private static int canonicalNameHash(
+      String packageName, String simpleName, String... simpleNames) {
+    int hash = packageName.isEmpty() ? 0 : 31 * packageName.hashCode() + '.';
+    hash = continueHash(hash, simpleName);
+    for (String name : simpleNames) {
+      hash = continueHash(31 * hash + '.', name);
+    }
+    return hash;
+  }
+
+  /** Continues a {@link String#hashCode} computation over the characters of {@code s}. */
+  private static int continueHash(int hash, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      hash = 31 * hash + s.charAt(i);
+    }
+    return hash;
+  }
+
+  /** Returns true if this class name has exactly these names. */
+  private boolean hasNames(String packageName, String simpleName, String... simpleNames) {
+    ClassName c = this;
+    for (int i = simpleNames.length - 1; i >= -1; i--, c = c.enclosingClassName) {
+      if (c == null || !c.simpleName.equals(i >= 0 ? simpleNames[i] : simpleName)) return false;
+    }
+    return c == null && this.packageName.equals(packageName);
+  }
+
+  /**
+   * Returns true if {@link #bestGuess} would return this class name for its canonical name, given
+   * that its package name has {@code packageNameLength} characters.
+   */
+  private boolean isBestGuess(int packageNameLength) {
+    if (packageName.length() != packageNameLength) return false;
+    for (ClassName c = this; c != null; c = c.enclosingClassName) {
+      if (c.simpleName.isEmpty()
+          || !Character.isUpperCase(c.simpleName.codePointAt(0))
+          || c.simpleName.indexOf('.') != -1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns true if {@link #get(TypeElement)} would return this class name for {@code element}. */
+  private boolean isNameOf(TypeElement element) {
+    ClassName c = this;
+    for (Element e = element; ; e = e.getEnclosingElement(), c = c.enclosingClassName) {
+      if (!e.getSimpleName().contentEquals(c.simpleName)) return false;
+      Element enclosing = e.getEnclosingElement();
+      if (enclosing instanceof PackageElement) {
+        return c.enclosingClassName == null
+            && ((PackageElement) enclosing).getQualifiedName().contentEquals(packageName);
+      }
+      if (!(enclosing instanceof TypeElement) || c.enclosingClassName == null) return false;
+    }
+  }
+
   @Override public int compareTo(ClassName o) {
     return canonicalName.compareTo(o.canonicalName);
   }
@@ -262,15 +381,8 @@ public final class ClassName extends TypeName implements Comparable<ClassName> {
 
       } else if (className.isAnnotated() || className == this) {
         // We encountered the first enclosing class that must be emitted.
-        String qualifiedName = out.lookupName(className);
-        int dot = qualifiedName.lastIndexOf('.');
-        if (dot != -1) {
-          out.emitAndIndent(qualifiedName.substring(0, dot + 1));
-          simpleName = qualifiedName.substring(dot + 1);
-          charsEmitted = true;
-        } else {
-          simpleName = qualifiedName;
-        }
+        out.emitQualifier(className);
+        simpleName = className.simpleName;
 
       } else {
         // Don't emit this enclosing type. Keep going so we can be more precise.
@@ -289,6 +401,43 @@ public final class ClassName extends TypeName implements Comparable<ClassName> {
     return out;
   }
 
+  /**
+   * Unannotated class names by the hash codes of their canonical names. Hashes let lookups by parts
+   * skip joining them; callers check the names of what they get.
+   */
+  private static final class InternPool {
+    private final ConcurrentHashMap<Integer, ClassName> classNames = new ConcurrentHashMap<>();
+    private final int maximumSize;
+
+    InternPool(int maximumSize) {
+      this.maximumSize = maximumSize;
+    }
+
+    ClassName get(int canonicalNameHash) {
+      return classNames.get(canonicalNameHash);
+    }
+
+    /** Returns the pooled instance with the same names as {@code className}, pooling it if new. */
+    ClassName intern(ClassName className) {
+      if (classNames.size() >= maximumSize) {
+        classNames.clear(); // Cheaper than tracking usage, and the hot names come back quickly.
+      }
+      ClassName pooled = classNames.putIfAbsent(className.canonicalName.hashCode(), className);
+      if (pooled == null) return className;
+      return pooled.hasSameNames(className) ? pooled : className;
+    }
+  }
+
+  /** Returns true if this and {@code that} have the same package and simple names. */
+  private boolean hasSameNames(ClassName that) {
+    ClassName a = this;
+    ClassName b = that;
+    for (; a != null && b != null; a = a.enclosingClassName, b = b.enclosingClassName) {
+      if (!a.simpleName.equals(b.simpleName)) return false;
+    }
+    return a == b && packageName.equals(that.packageName);
+  }
+
   /** Returns all enclosing classes in this, outermost first. */
   private List<ClassName> enclosingClasses() {
     List<ClassName> result = new ArrayList<>();
@@ -17,17 +17,19 @@ package com.squareup.javapoet;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collector;
 import java.util.stream.StreamSupport;
 import javax.lang.model.element.Element;
 import javax.lang.model.type.TypeMirror;
 
-import static com.squareup.javapoet.Util.checkArgument;
+import static com.squareup.javapoet.Util.checkNotNull;
 
 /**
  * A fragment of a .java file, potentially containing declarations, statements, and documentation.
@@ -63,48 +65,200 @@ import static com.squareup.javapoet.Util.checkArgument;
  * </ul>
  */
 public final class CodeBlock {
-  private static final Pattern NAMED_ARGUMENT =
-      Pattern.compile("\\$(?<argumentName>[\\w_]+):(?<typeChar>[\\w]).*");
-  private static final Pattern LOWERCASE = Pattern.compile("[a-z]+[\\w_]*");
+  /** Maps with at most this many named arguments are searched without creating substrings. */
+  private static final int NAMED_ARGUMENT_SCAN_LIMIT = 8;
+
+  /** Leaves with at most this many parts are copied into builders rather than shared. */
+  private static final int SHARING_THRESHOLD = 16;
+
+  private static final int[] NO_ARGUMENT_REFS = new int[0];
+
+  /** Opcodes of the format parts. Each placeholder has one, see {@link #opcode(char)}. */
+  static final byte TEXT = 0;
+  static final byte LITERAL = 1;
+  static final byte NAME = 2;
+  static final byte STRING = 3;
+  static final byte TYPE = 4;
+  static final byte DOLLAR = 5;
+  static final byte INDENT = 6;
+  static final byte UNINDENT = 7;
+  static final byte STATEMENT_BEGIN = 8;
+  static final byte STATEMENT_END = 9;
+  static final byte WRAPPING_SPACE = 10;
+  static final byte ZERO_WIDTH_SPACE = 11;
+
+  /**
+   * The opcode of each format part. Builders parse format strings straight into opcodes, so that
+   * neither they nor {@link CodeWriter} need to allocate or compare placeholder strings.
+   */
+  final byte[] ops;
+
+  /** The literal table: the format part of each {@link #TEXT} opcode, in order. */
+  final String[] texts;
 
-  /** A heterogeneous list containing string literals and value placeholders. */
-  final List<String> formatParts;
   final List<Object> args;
 
-  private CodeBlock(Builder builder) {
-    this.formatParts = Util.immutableList(builder.formatParts);
-    this.args = Util.immutableList(builder.args);
+  /**
+   * The blocks that this block concatenates, or null if this block is a leaf that holds its own
+   * parts. Builders share the blocks added to them rather than copying their parts, so composing
+   * large blocks from smaller ones doesn't copy the same parts over and over.
+   */
+  final CodeBlock[] children;
+
+  /** Lazily-initialized toString of this spec. */
+  private String cachedString;
+
+  /** Creates a leaf. The caller must not modify {@code args} afterwards. */
+  private CodeBlock(byte[] ops, String[] texts, List<Object> args) {
+    this.ops = ops;
+    this.texts = texts;
+    this.args = Collections.unmodifiableList(args);
+    this.children = null;
+  }
+
+  /** Creates a block that concatenates {@code children}, none of which are empty. */
+  private CodeBlock(CodeBlock[] children) {
+    this.ops = new byte[0];
+    this.texts = new String[0];
+    this.args = Collections.emptyList();
+    this.children = children;
+  }
+
+  /** Returns the opcode of the placeholder {@code $c}, or -1 if there is no such placeholder. */
+  private static byte opcode(char c) {
+    switch (c) {
+      case 'L': return LITERAL;
+      case 'N': return NAME;
+      case 'S': return STRING;
+      case 'T': return TYPE;
+      case '$': return DOLLAR;
+      case '>': return INDENT;
+      case '<': return UNINDENT;
+      case '[': return STATEMENT_BEGIN;
+      case ']': return STATEMENT_END;
+      case 'W': return WRAPPING_SPACE;
+      case 'Z': return ZERO_WIDTH_SPACE;
+      default: return -1;
+    }
+  }
+
+  /** Returns true if placeholders with opcode {@code op} take an argument. */
+  private static boolean takesArgument(byte op) {
+    return op >= LITERAL && op <= TYPE;
   }
 
   public boolean isEmpty() {
-    return formatParts.isEmpty();
+    return ops.length == 0 && children == null;
+  }
+
+  /**
+   * Returns the leaves of this block, in order. This walks the tree without recursion, because
+   * blocks that are rebuilt many times with {@link #toBuilder} may nest deeply.
+   */
+  List<CodeBlock> leaves() {
+    if (children == null) return Collections.singletonList(this);
+    List<CodeBlock> result = new ArrayList<>();
+    Deque<CodeBlock> stack = new ArrayDeque<>();
+    stack.push(this);
+    while (!stack.isEmpty()) {
+      CodeBlock block = stack.pop();
+      if (block.children == null) {
+        result.add(block);
+      } else {
+        for (int i = block.children.length - 1; i >= 0; i--) {
+          stack.push(block.children[i]);
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Returns a leaf with the same parts as this block. */
+  private CodeBlock flatten() {
+    if (children == null) return this;
+    Builder builder = new Builder();
+    for (CodeBlock leaf : leaves()) {
+      builder.addParts(leaf.ops, leaf.texts);
+      builder.args.addAll(leaf.args);
+    }
+    return builder.build();
   }
 
   @Override public boolean equals(Object o) {
     if (this == o) return true;
     if (o == null) return false;
     if (getClass() != o.getClass()) return false;
-    return toString().equals(o.toString());
+    CodeBlock that = (CodeBlock) o;
+    if (structurallyEquals(that)) return true;
+    return hashCode() == that.hashCode() && toString().equals(that.toString());
   }
 
   @Override public int hashCode() {
     return toString().hashCode();
   }
 
+  /**
+   * Returns true if this and {@code that} were built from the same parts. Such code blocks always
+   * render identically, so {@link #equals} can skip rendering them. The converse isn't true: {@code
+   * $L} with {@code "int"} and {@code $T} with {@code int} render the same but aren't the same
+   * parts, so {@link #equals} falls back to comparing the rendered code.
+   */
+  @SuppressWarnings("ReferenceEquality")
+  boolean structurallyEquals(CodeBlock that) {
+    if (this == that) return true;
+    if (children != null || that.children != null) {
+      // The same parts may be split into leaves differently.
+      return flatten().structurallyEquals(that.flatten());
+    }
+    return Arrays.equals(ops, that.ops)
+        && Arrays.equals(texts, that.texts)
+        && Util.pairwiseEquals(args, that.args, CodeBlock::argumentsEqual);
+  }
+
   @Override public String toString() {
-    StringBuilder out = new StringBuilder();
-    try {
-      new CodeWriter(out).emit(this);
-      return out.toString();
-    } catch (IOException e) {
-      throw new AssertionError();
+    String result = cachedString;
+    if (result == null) {
+      StringBuilder out = new StringBuilder();
+      try {
+        new CodeWriter(out).emit(this);
+      } catch (IOException e) {
+        throw new AssertionError();
+      }
+      result = out.toString();
+      cachedString = result;
+    }
+    return result;
+  }
+
+  private static boolean argumentsEqual(Object a, Object b) {
+    if (a == b) return true;
+    if (a == null || b == null || a.getClass() != b.getClass()) return false;
+    if (a instanceof CodeBlock) return ((CodeBlock) a).structurallyEquals((CodeBlock) b);
+    if (a instanceof TypeSpec) return ((TypeSpec) a).structurallyEquals((TypeSpec) b);
+    if (a instanceof AnnotationSpec) {
+      return ((AnnotationSpec) a).structurallyEquals((AnnotationSpec) b);
     }
+    // Type names compare their rendered form. Everything else is emitted as its string value.
+    return a instanceof TypeName ? a.equals(b) : String.valueOf(a).equals(String.valueOf(b));
   }
 
   public static CodeBlock of(String format, Object... args) {
     return new Builder().add(format, args).build();
   }
 
+  /**
+   * Returns a template that parses and validates {@code format} once, for formats that are used
+   * over and over. Format errors are reported here rather than when arguments are bound.
+   */
+  public static Template template(String format) {
+    return new Template(format, false);
+  }
+
+  /** Returns a template for a format with named arguments, like {@link Builder#addNamed}. */
+  public static Template namedTemplate(String format) {
+    return new Template(format, true);
+  }
+
   /**
    * Joins {@code codeBlocks} into a single {@link CodeBlock}, each separated by {@code separator}.
    * For example, joining {@code String s}, {@code Object o} and {@code int i} using {@code ", "}
@@ -121,7 +275,7 @@ public final class CodeBlock {
    */
   public static Collector<CodeBlock, ?, CodeBlock> joining(String separator) {
     return Collector.of(
-        () -> new CodeBlockJoiner(separator, builder()),
+        () -> new CodeBlockJoiner(separator),
         CodeBlockJoiner::add,
         CodeBlockJoiner::merge,
         CodeBlockJoiner::join);
@@ -134,15 +288,15 @@ public final class CodeBlock {
    */
   public static Collector<CodeBlock, ?, CodeBlock> joining(
       String separator, String prefix, String suffix) {
-    Builder builder = builder().add("$N", prefix);
     return Collector.of(
-        () -> new CodeBlockJoiner(separator, builder),
+        () -> new CodeBlockJoiner(separator),
         CodeBlockJoiner::add,
         CodeBlockJoiner::merge,
-        joiner -> {
-            builder.add(CodeBlock.of("$N", suffix));
-            return joiner.join();
-        });
+        joiner -> builder()
+            .add("$N", prefix)
+            .add(joiner.join())
+            .add("$N", suffix)
+            .build());
   }
 
   public static Builder builder() {
@@ -150,21 +304,42 @@ public final class CodeBlock {
   }
 
   public Builder toBuilder() {
-    Builder builder = new Builder();
-    builder.formatParts.addAll(formatParts);
-    builder.args.addAll(args);
-    return builder;
+    return new Builder().add(this);
   }
 
   public static final class Builder {
-    final List<String> formatParts = new ArrayList<>();
-    final List<Object> args = new ArrayList<>();
+    /** The blocks added so far, followed by the parts below. Null until first needed. */
+    private List<CodeBlock> children;
+
+    /** Opcodes of the parts added since the last child. Only the first {@code opCount} apply. */
+    private byte[] ops = new byte[16];
+    private int opCount;
+    final List<String> texts = new ArrayList<>();
+    List<Object> args = new ArrayList<>();
+
+    /**
+     * What each placeholder of the last parsed format refers to: an argument index for positional
+     * formats, or the start and end of an argument name for named templates. Only the first {@code
+     * argumentRefCount} apply. Reused across formats so that parsing doesn't allocate.
+     */
+    private int[] argumentRefs = NO_ARGUMENT_REFS;
+    private int argumentRefCount;
 
     private Builder() {
     }
 
     public boolean isEmpty() {
-      return formatParts.isEmpty();
+      return opCount == 0 && (children == null || children.isEmpty());
+    }
+
+    private void addOp(byte op) {
+      if (opCount == ops.length) ops = Arrays.copyOf(ops, opCount * 2);
+      ops[opCount++] = op;
+    }
+
+    private void addText(String text) {
+      addOp(TEXT);
+      texts.add(text);
     }
 
     /**
@@ -179,49 +354,124 @@ public final class CodeBlock {
      * value {@code java.lang.Integer.class} in the argument map.
      */
     public Builder addNamed(String format, Map<String, ?> arguments) {
-      int p = 0;
+      checkArgumentNames(arguments);
+      int opMark = opCount;
+      int textMark = texts.size();
+      int argMark = args.size();
+      try {
+        parseNamed(format, arguments);
+      } catch (RuntimeException e) {
+        rollBack(opMark, textMark, argMark);
+        throw e;
+      }
+      return this;
+    }
 
+    private static void checkArgumentNames(Map<String, ?> arguments) {
       for (String argument : arguments.keySet()) {
-        checkArgument(LOWERCASE.matcher(argument).matches(),
-            "argument '%s' must start with a lowercase character", argument);
+        if (!isLowercaseName(argument)) {
+          throw new IllegalArgumentException(String.format(
+              "argument '%s' must start with a lowercase character", argument));
+        }
       }
+    }
+
+    /**
+     * Parses {@code format}, which has named arguments, adding its parts to this builder. Each
+     * placeholder is bound to its value in {@code arguments} as it is parsed, so that errors are
+     * reported in the order of the placeholders. If {@code arguments} is null, the start and end of
+     * each argument's name in {@code format} are added to {@link #argumentRefs} instead.
+     */
+    private void parseNamed(String format, Map<String, ?> arguments) {
+      argumentRefCount = 0;
+      int p = 0;
 
       while (p < format.length()) {
         int nextP = format.indexOf("$", p);
         if (nextP == -1) {
-          formatParts.add(format.substring(p));
+          addText(format.substring(p));
           break;
         }
 
         if (p != nextP) {
-          formatParts.add(format.substring(p, nextP));
+          addText(format.substring(p, nextP));
           p = nextP;
         }
 
-        Matcher matcher = null;
-        int colon = format.indexOf(':', p);
+        int colon = namedArgumentColon(format, p);
         if (colon != -1) {
-          int endIndex = Math.min(colon + 2, format.length());
-          matcher = NAMED_ARGUMENT.matcher(format.substring(p, endIndex));
-        }
-        if (matcher != null && matcher.lookingAt()) {
-          String argumentName = matcher.group("argumentName");
-          checkArgument(arguments.containsKey(argumentName), "Missing named argument for $%s",
-              argumentName);
-          char formatChar = matcher.group("typeChar").charAt(0);
-          addArgument(format, formatChar, arguments.get(argumentName));
-          formatParts.add("$" + formatChar);
-          p += matcher.regionEnd();
+          byte op = opcode(format.charAt(colon + 1));
+          if (arguments != null) {
+            addArgument(format, op, namedArgument(format, p + 1, colon, arguments));
+          } else if (takesArgument(op)) {
+            addArgumentRef(p + 1);
+            addArgumentRef(colon);
+          } else {
+            throw new IllegalArgumentException(
+                String.format("invalid format string: '%s'", format));
+          }
+          addOp(op);
+          p = colon + 2;
         } else {
-          checkArgument(p < format.length() - 1, "dangling $ at end");
-          checkArgument(isNoArgPlaceholder(format.charAt(p + 1)),
-              "unknown format $%s at %s in '%s'", format.charAt(p + 1), p + 1, format);
-          formatParts.add(format.substring(p, p + 2));
+          if (p == format.length() - 1) throw new IllegalArgumentException("dangling $ at end");
+          char c = format.charAt(p + 1);
+          if (!isNoArgPlaceholder(c)) {
+            throw new IllegalArgumentException(
+                String.format("unknown format $%s at %s in '%s'", c, p + 1, format));
+          }
+          addOp(opcode(c));
           p += 2;
         }
       }
+    }
 
-      return this;
+    /**
+     * Returns the position of the colon if {@code format} has a named argument placeholder like
+     * {@code $name:T} at {@code p}, or -1 if it doesn't.
+     */
+    private static int namedArgumentColon(String format, int p) {
+      int colon = p + 1;
+      while (colon < format.length() && isWordChar(format.charAt(colon))) {
+        colon++;
+      }
+      return colon > p + 1
+          && colon + 1 < format.length()
+          && format.charAt(colon) == ':'
+          && isWordChar(format.charAt(colon + 1))
+          ? colon
+          : -1;
+    }
+
+    /** Returns the value of the argument named {@code format[start..end)}. */
+    private static Object namedArgument(
+        String format, int start, int end, Map<String, ?> arguments) {
+      int length = end - start;
+      if (arguments.size() <= NAMED_ARGUMENT_SCAN_LIMIT) {
+        for (Map.Entry<String, ?> entry : arguments.entrySet()) {
+          String name = entry.getKey();
+          if (name.length() == length && format.regionMatches(start, name, 0, length)) {
+            return entry.getValue();
+          }
+        }
+      } else {
+        String name = format.substring(start, end);
+        if (arguments.containsKey(name)) return arguments.get(name);
+      }
+      throw new IllegalArgumentException(
+          String.format("Missing named argument for $%s", format.substring(start, end)));
+    }
+
+    /** Returns true if {@code name} is a lowercase letter followed by word characters. */
+    private static boolean isLowercaseName(String name) {
+      if (name.isEmpty() || name.charAt(0) < 'a' || name.charAt(0) > 'z') return false;
+      for (int i = 1; i < name.length(); i++) {
+        if (!isWordChar(name.charAt(i))) return false;
+      }
+      return true;
+    }
+
+    private static boolean isWordChar(char c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
     }
 
     /**
@@ -236,17 +486,59 @@ public final class CodeBlock {
      * error.
      */
     public Builder add(String format, Object... args) {
+      addFormat(format, args);
+      return this;
+    }
+
+    private void addFormat(String format, Object[] args) {
+      int opMark = opCount;
+      int textMark = texts.size();
+      int argMark = this.args.size();
+      try {
+        parsePositional(format, args.length);
+        int ref = 0;
+        for (int i = opMark; i < opCount; i++) {
+          if (takesArgument(ops[i])) addArgument(format, ops[i], args[argumentRefs[ref++]]);
+        }
+      } catch (RuntimeException e) {
+        rollBack(opMark, textMark, argMark);
+        throw e;
+      }
+    }
+
+    /** Discards the parts and arguments added after the given marks by a call that failed. */
+    private void rollBack(int opMark, int textMark, int argMark) {
+      opCount = opMark;
+      texts.subList(textMark, texts.size()).clear();
+      args.subList(argMark, args.size()).clear();
+    }
+
+    /**
+     * Parses {@code format}, which has relative or indexed arguments, adding its parts to this
+     * builder. For each placeholder that takes an argument, the index of that argument is added to
+     * {@link #argumentRefs}. Returns the number of arguments that {@code format} takes.
+     *
+     * @param argCount the number of arguments that indexes must be in range of, or -1 to infer the
+     *     number of arguments from {@code format}.
+     */
+    private int parsePositional(String format, int argCount) {
+      argumentRefCount = 0;
+      // Each argument is used by a placeholder of at least two characters. That bounds the indexes
+      // even when the arguments aren't known yet.
+      int limit = argCount >= 0 ? argCount : format.length() / 2;
       boolean hasRelative = false;
       boolean hasIndexed = false;
 
       int relativeParameterCount = 0;
-      int[] indexedParameterCount = new int[args.length];
+      int indexedCount = 0; // One more than the largest index used.
+      long indexedMask = 0L; // Bit i is set if argument i is used, for the first 64 arguments.
+      boolean[] indexedBeyondMask = null; // Allocated only if there are more indexed arguments.
 
       for (int p = 0; p < format.length(); ) {
         if (format.charAt(p) != '$') {
           int nextP = format.indexOf('$', p + 1);
           if (nextP == -1) nextP = format.length();
-          formatParts.add(format.substring(p, nextP));
+          addText(format.substring(p, nextP)); // No copy if format has no placeholders.
           p = nextP;
           continue;
         }
@@ -255,78 +547,131 @@ public final class CodeBlock {
 
         // Consume zero or more digits, leaving 'c' as the first non-digit char after the '$'.
         int indexStart = p;
+        long indexValue = 0L;
         char c;
         do {
-          checkArgument(p < format.length(), "dangling format characters in '%s'", format);
+          if (p >= format.length()) {
+            throw new IllegalArgumentException(
+                String.format("dangling format characters in '%s'", format));
+          }
           c = format.charAt(p++);
+          if (c >= '0' && c <= '9' && indexValue <= limit) {
+            indexValue = indexValue * 10 + (c - '0');
+          }
         } while (c >= '0' && c <= '9');
         int indexEnd = p - 1;
 
         // If 'c' doesn't take an argument, we're done.
         if (isNoArgPlaceholder(c)) {
-          checkArgument(
-              indexStart == indexEnd, "$$, $>, $<, $[, $], $W, and $Z may not have an index");
-          formatParts.add("$" + c);
+          if (indexStart != indexEnd) {
+            throw new IllegalArgumentException(
+                "$$, $>, $<, $[, $], $W, and $Z may not have an index");
+          }
+          addOp(opcode(c));
           continue;
         }
 
         // Find either the indexed argument, or the relative argument. (0-based).
-        int index;
+        long index;
         if (indexStart < indexEnd) {
-          index = Integer.parseInt(format.substring(indexStart, indexEnd)) - 1;
+          index = indexValue - 1;
           hasIndexed = true;
-          if (args.length > 0) {
-            indexedParameterCount[index % args.length]++; // modulo is needed, checked below anyway
-          }
         } else {
           index = relativeParameterCount;
           hasRelative = true;
           relativeParameterCount++;
         }
 
-        checkArgument(index >= 0 && index < args.length,
-            "index %d for '%s' not in range (received %s arguments)",
-            index + 1, format.substring(indexStart - 1, indexEnd + 1), args.length);
-        checkArgument(!hasIndexed || !hasRelative, "cannot mix indexed and positional parameters");
-
-        addArgument(format, c, args[index]);
+        if (index < 0 || index >= limit) {
+          // Past the limit the digits stop accumulating, so report them as written.
+          String indexText = indexValue > limit
+              ? format.substring(indexStart, indexEnd)
+              : String.valueOf(index + 1);
+          String placeholder = format.substring(indexStart - 1, indexEnd + 1);
+          throw new IllegalArgumentException(argCount >= 0
+              ? String.format("index %s for '%s' not in range (received %s arguments)",
+                  indexText, placeholder, argCount)
+              : String.format("index %s for '%s' not in range", indexText, placeholder));
+        }
+        if (hasIndexed && hasRelative) {
+          throw new IllegalArgumentException("cannot mix indexed and positional parameters");
+        }
+        byte op = opcode(c);
+        if (!takesArgument(op)) {
+          throw new IllegalArgumentException(String.format("invalid format string: '%s'", format));
+        }
 
-        formatParts.add("$" + c);
+        if (indexStart < indexEnd) {
+          if (index < 64) {
+            indexedMask |= 1L << index;
+          } else {
+            if (indexedBeyondMask == null) indexedBeyondMask = new boolean[limit];
+            indexedBeyondMask[(int) index] = true;
+          }
+          indexedCount = Math.max(indexedCount, (int) index + 1);
+        }
+        addArgumentRef((int) index);
+        addOp(op);
       }
 
       if (hasRelative) {
-        checkArgument(relativeParameterCount >= args.length,
-            "unused arguments: expected %s, received %s", relativeParameterCount, args.length);
+        if (argCount >= 0 && relativeParameterCount < argCount) {
+          throw new IllegalArgumentException(String.format(
+              "unused arguments: expected %s, received %s", relativeParameterCount, argCount));
+        }
+        return relativeParameterCount;
       }
       if (hasIndexed) {
-        List<String> unused = new ArrayList<>();
-        for (int i = 0; i < args.length; i++) {
-          if (indexedParameterCount[i] == 0) {
-            unused.add("$" + (i + 1));
-          }
+        int arity = argCount >= 0 ? argCount : indexedCount;
+        checkIndexedArgumentsUsed(arity, indexedMask, indexedBeyondMask);
+        return arity;
+      }
+      return 0;
+    }
+
+    /** Reports the arguments, of the first {@code argCount}, that no placeholder used. */
+    private static void checkIndexedArgumentsUsed(
+        int argCount, long indexedMask, boolean[] indexedBeyondMask) {
+      List<String> unused = null;
+      for (int i = 0; i < argCount; i++) {
+        boolean used = i < 64
+            ? (indexedMask & (1L << i)) != 0
+            : indexedBeyondMask != null && indexedBeyondMask[i];
+        if (!used) {
+          if (unused == null) unused = new ArrayList<>();
+          unused.add("$" + (i + 1));
         }
+      }
+      if (unused != null) {
         String s = unused.size() == 1 ? "" : "s";
-        checkArgument(unused.isEmpty(), "unused argument%s: %s", s, String.join(", ", unused));
+        throw new IllegalArgumentException(
+            String.format("unused argument%s: %s", s, String.join(", ", unused)));
       }
-      return this;
     }
 
-    private boolean isNoArgPlaceholder(char c) {
+    private void addArgumentRef(int ref) {
+      if (argumentRefCount == argumentRefs.length) {
+        argumentRefs = Arrays.copyOf(argumentRefs, Math.max(8, argumentRefCount * 2));
+      }
+      argumentRefs[argumentRefCount++] = ref;
+    }
+
+    private static boolean isNoArgPlaceholder(char c) {
       return c == '$' || c == '>' || c == '<' || c == '[' || c == ']' || c == 'W' || c == 'Z';
     }
 
-    private void addArgument(String format, char c, Object arg) {
-      switch (c) {
-        case 'N':
+    private void addArgument(String format, byte op, Object arg) {
+      switch (op) {
+        case NAME:
           this.args.add(argToName(arg));
           break;
-        case 'L':
+        case LITERAL:
           this.args.add(argToLiteral(arg));
           break;
-        case 'S':
+        case STRING:
           this.args.add(argToString(arg));
           break;
-        case 'T':
+        case TYPE:
           this.args.add(argToType(arg));
           break;
         default:
@@ -398,9 +743,15 @@ public final class CodeBlock {
     }
 
     public Builder addStatement(String format, Object... args) {
-      add("$[");
-      add(format, args);
-      add(";\n$]");
+      addOp(STATEMENT_BEGIN);
+      try {
+        addFormat(format, args);
+      } catch (RuntimeException e) {
+        opCount--; // STATEMENT_BEGIN.
+        throw e;
+      }
+      addText(";\n");
+      addOp(STATEMENT_END);
       return this;
     }
 
@@ -409,45 +760,215 @@ public final class CodeBlock {
     }
 
     public Builder add(CodeBlock codeBlock) {
-      formatParts.addAll(codeBlock.formatParts);
-      args.addAll(codeBlock.args);
+      if (codeBlock.children == null && codeBlock.ops.length <= SHARING_THRESHOLD) {
+        // Copying a small leaf is cheaper than keeping another child.
+        addParts(codeBlock.ops, codeBlock.texts);
+        args.addAll(codeBlock.args);
+      } else {
+        addPartsAsChild();
+        children.add(codeBlock);
+      }
       return this;
     }
 
+    /** Moves the parts added since the last child into a new leaf, without copying arguments. */
+    private void addPartsAsChild() {
+      if (children == null) children = new ArrayList<>();
+      if (opCount == 0) return;
+      String[] leafTexts = texts.toArray(new String[texts.size()]);
+      children.add(new CodeBlock(Arrays.copyOf(ops, opCount), leafTexts, args));
+      opCount = 0;
+      texts.clear();
+      args = new ArrayList<>();
+    }
+
+    /** Adds code by binding {@code args} to the placeholders of {@code template}. */
+    public Builder add(Template template, Object... args) {
+      if (template.argumentNames != null) {
+        throw new IllegalArgumentException(
+            String.format("'%s' requires named arguments", template.format));
+      }
+      if (args.length != template.argumentCount) {
+        throw new IllegalArgumentException(String.format(
+            "'%s' requires %s arguments, received %s",
+            template.format, template.argumentCount, args.length));
+      }
+      int opMark = opCount;
+      int textMark = texts.size();
+      int argMark = this.args.size();
+      addParts(template.ops, template.texts);
+      try {
+        for (int i = 0; i < template.argumentOps.length; i++) {
+          addArgument(template.format, template.argumentOps[i], args[template.argumentIndexes[i]]);
+        }
+      } catch (RuntimeException e) {
+        rollBack(opMark, textMark, argMark);
+        throw e;
+      }
+      return this;
+    }
+
+    /** Adds code by binding {@code arguments} to the named placeholders of {@code template}. */
+    public Builder addNamed(Template template, Map<String, ?> arguments) {
+      String[] names = template.argumentNames;
+      if (names == null) {
+        throw new IllegalArgumentException(
+            String.format("'%s' requires positional arguments", template.format));
+      }
+      checkArgumentNames(arguments);
+      for (String name : names) {
+        if (!arguments.containsKey(name)) {
+          throw new IllegalArgumentException(
+              String.format("Missing named argument for $%s", name));
+        }
+      }
+      int opMark = opCount;
+      int textMark = texts.size();
+      int argMark = args.size();
+      addParts(template.ops, template.texts);
+      try {
+        for (int i = 0; i < template.argumentOps.length; i++) {
+          Object arg = arguments.get(names[template.argumentIndexes[i]]);
+          addArgument(template.format, template.argumentOps[i], arg);
+        }
+      } catch (RuntimeException e) {
+        rollBack(opMark, textMark, argMark);
+        throw e;
+      }
+      return this;
+    }
+
+    private void addParts(byte[] partOps, String[] partTexts) {
+      int newOpCount = opCount + partOps.length;
+      if (newOpCount > ops.length) ops = Arrays.copyOf(ops, Math.max(newOpCount, opCount * 2));
+      System.arraycopy(partOps, 0, ops, opCount, partOps.length);
+      opCount = newOpCount;
+      Collections.addAll(texts, partTexts);
+    }
+
     public Builder indent() {
-      this.formatParts.add("$>");
+      addOp(INDENT);
       return this;
     }
 
     public Builder unindent() {
-      this.formatParts.add("$<");
+      addOp(UNINDENT);
       return this;
     }
 
     public Builder clear() {
-      formatParts.clear();
+      if (children != null) children.clear();
+      opCount = 0;
+      texts.clear();
       args.clear();
       return this;
     }
 
     public CodeBlock build() {
-      return new CodeBlock(this);
+      addPartsAsChild();
+      switch (children.size()) {
+        case 0:
+          return new CodeBlock(new byte[0], new String[0], Collections.emptyList());
+        case 1:
+          return children.get(0);
+        default:
+          return new CodeBlock(children.toArray(new CodeBlock[children.size()]));
+      }
     }
   }
 
+  /**
+   * A parsed and validated format string. Binding arguments to a template skips parsing, which
+   * {@link #of} and {@link Builder#add(String, Object...)} repeat on every call. Templates are
+   * immutable and may be shared.
+   */
+  public static final class Template {
+    final String format;
+    final byte[] ops;
+    final String[] texts;
+    /** The opcode of each placeholder that takes an argument, in order. */
+    final byte[] argumentOps;
+    /** The index of the argument that each placeholder in {@link #argumentOps} refers to. */
+    final int[] argumentIndexes;
+    final int argumentCount;
+    /** The name of each argument, or null if this template takes positional arguments. */
+    final String[] argumentNames;
+
+    private Template(String format, boolean named) {
+      this.format = checkNotNull(format, "format == null");
+      Builder parts = new Builder();
+      if (named) {
+        parts.parseNamed(format, null);
+        List<String> names = new ArrayList<>();
+        this.argumentIndexes = new int[parts.argumentRefCount / 2];
+        for (int a = 0; a < argumentIndexes.length; a++) {
+          String name = format.substring(parts.argumentRefs[2 * a], parts.argumentRefs[2 * a + 1]);
+          int index = names.indexOf(name);
+          if (index == -1) {
+            index = names.size();
+            names.add(name);
+          }
+          argumentIndexes[a] = index;
+        }
+        this.argumentNames = names.toArray(new String[names.size()]);
+        this.argumentCount = names.size();
+      } else {
+        this.argumentCount = parts.parsePositional(format, -1);
+        this.argumentIndexes = Arrays.copyOf(parts.argumentRefs, parts.argumentRefCount);
+        this.argumentNames = null;
+      }
+      this.ops = Arrays.copyOf(parts.ops, parts.opCount);
+      this.texts = parts.texts.toArray(new String[parts.texts.size()]);
+      this.argumentOps = new byte[argumentIndexes.length];
+      for (int i = 0, a = 0; i < ops.length; i++) {
+        if (takesArgument(ops[i])) argumentOps[a++] = ops[i];
+      }
+    }
+
+    /** Returns a code block with {@code args} bound to this template's placeholders. */
+    public CodeBlock bind(Object... args) {
+      return new Builder().add(this, args).build();
+    }
+
+    /** Returns a code block with {@code arguments} bound to this template's named placeholders. */
+    public CodeBlock bindNamed(Map<String, ?> arguments) {
+      return new Builder().addNamed(this, arguments).build();
+    }
+
+    @Override public String toString() {
+      return format;
+    }
+  }
+
+  /**
+   * Accumulates one segment of a joined stream. Each segment has its own builder, so parallel
+   * streams can fill segments independently. Merging shares the other segment's blocks rather than
+   * copying them.
+   */
   private static final class CodeBlockJoiner {
-    private final String delimiter;
-    private final Builder builder;
+    private final String separator;
+    private final Builder builder = builder();
     private boolean first = true;
 
-    CodeBlockJoiner(String delimiter, Builder builder) {
-      this.delimiter = delimiter;
-      this.builder = builder;
+    /** The parsed separator, or null until a separator is first needed. */
+    private CodeBlock delimiter;
+
+    CodeBlockJoiner(String separator) {
+      this.separator = separator;
+    }
+
+    /**
+     * Returns the separator, parsing it once. Like appending it to each element, this fails only
+     * if the separator is needed, so invalid separators are fine for streams of at most one block.
+     */
+    private CodeBlock delimiter() {
+      if (delimiter == null) delimiter = CodeBlock.of(separator);
+      return delimiter;
     }
 
     CodeBlockJoiner add(CodeBlock codeBlock) {
       if (!first) {
-        builder.add(delimiter);
+        builder.add(delimiter());
       }
       first = false;
 
@@ -456,10 +977,10 @@ public final class CodeBlock {
     }
 
     CodeBlockJoiner merge(CodeBlockJoiner other) {
-      CodeBlock otherBlock = other.builder.build();
-      if (!otherBlock.isEmpty()) {
-        add(otherBlock);
-      }
+      if (other.first) return this;
+      if (first) return other;
+      builder.add(delimiter());
+      builder.add(other.builder.build());
       return this;
     }
 
@@ -16,18 +16,16 @@
 package com.squareup.javapoet;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.EnumSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.TreeSet;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Modifier;
 
@@ -44,12 +42,39 @@ import static java.lang.String.join;
 final class CodeWriter {
   /** Sentinel value that indicates that no user-provided package has been set. */
   private static final String NO_PACKAGE = new String();
-  private static final Pattern LINE_BREAKING_PATTERN = Pattern.compile("\\R");
+  static final int DEFAULT_COLUMN_LIMIT = 100;
+
+  /** A column limit that lines never exceed. Writers with this limit never wrap lines. */
+  static final int NO_COLUMN_LIMIT = Integer.MAX_VALUE;
 
   private final String indent;
+  private final Indentation indentation;
+  private final int columnLimit;
+  /** Null if this writer never wraps lines or defers imports. */
   private final LineWrapper out;
+
+  /** Non-null if this writer never wraps lines. Code is written here directly, unbuffered. */
+  private final Appendable unwrappedOut;
   private int indentLevel;
 
+  /**
+   * Null unless this writer defers the names of types until the imports are known. Otherwise this
+   * holds the code emitted so far as strings, {@linkplain LineWrap line wrapping points},
+   * {@linkplain DeferredQualifier type name qualifiers} and the {@linkplain DeferredImports
+   * imports}.
+   */
+  private final List<Object> deferredOutput;
+
+  /**
+   * True if this writer has no output and only collects the types to import. It visits code exactly
+   * like a writer with output does, so it sees the same types in the same scopes, but skips the
+   * work of producing text.
+   */
+  private final boolean importsOnly;
+
+  /** The last character written, unless this writer has a {@link LineWrapper} to track it. */
+  private char lastChar = Character.MIN_VALUE;
+
   private boolean javadoc = false;
   private boolean comment = false;
   private String packageName = NO_PACKAGE;
@@ -83,8 +108,35 @@ final class CodeWriter {
       Map<String, ClassName> importedTypes,
       Set<String> staticImports,
       Set<String> alwaysQualify) {
-    this.out = new LineWrapper(out, indent, 100);
+    this(out, indent, DEFAULT_COLUMN_LIMIT, importedTypes, staticImports, alwaysQualify);
+  }
+
+  CodeWriter(Appendable out,
+      String indent,
+      int columnLimit,
+      Map<String, ClassName> importedTypes,
+      Set<String> staticImports,
+      Set<String> alwaysQualify) {
+    this(checkNotNull(out, "out == null"), null, indent, columnLimit, importedTypes, staticImports,
+        alwaysQualify);
+  }
+
+  /** At most one of {@code out} and {@code deferredOutput} may be non-null. */
+  private CodeWriter(Appendable out,
+      List<Object> deferredOutput,
+      String indent,
+      int columnLimit,
+      Map<String, ClassName> importedTypes,
+      Set<String> staticImports,
+      Set<String> alwaysQualify) {
     this.indent = checkNotNull(indent, "indent == null");
+    this.indentation = new Indentation(indent);
+    boolean wraps = out != null && columnLimit != NO_COLUMN_LIMIT;
+    this.out = wraps ? new LineWrapper(out, indentation, columnLimit) : null;
+    this.unwrappedOut = wraps ? null : out;
+    this.deferredOutput = deferredOutput;
+    this.importsOnly = out == null && deferredOutput == null;
+    this.columnLimit = columnLimit;
     this.importedTypes = checkNotNull(importedTypes, "importedTypes == null");
     this.staticImports = checkNotNull(staticImports, "staticImports == null");
     this.alwaysQualify = checkNotNull(alwaysQualify, "alwaysQualify == null");
@@ -94,8 +146,25 @@ final class CodeWriter {
     }
   }
 
-  public Map<String, ClassName> importedTypes() {
-    return importedTypes;
+  /**
+   * Returns a writer that emits code in a single pass. Because the imports aren't known until all
+   * code has been emitted, the names of types are deferred. Call {@link #writeDeferred} to write
+   * the code with the imports that were collected.
+   */
+  static CodeWriter deferringImports(String indent, int columnLimit, Set<String> staticImports,
+      Set<String> alwaysQualify) {
+    return new CodeWriter(null, new ArrayList<>(), indent, columnLimit, Collections.emptyMap(),
+        staticImports, alwaysQualify);
+  }
+
+  /**
+   * Returns a writer that produces no code. Emit code to it to collect the types that code should
+   * import, then get them from {@link #suggestedImports}.
+   */
+  static CodeWriter collectingImports(
+      String indent, Set<String> staticImports, Set<String> alwaysQualify) {
+    return new CodeWriter(null, null, indent, NO_COLUMN_LIMIT, Collections.emptyMap(),
+        staticImports, alwaysQualify);
   }
 
   public CodeWriter indent() {
@@ -139,6 +208,33 @@ final class CodeWriter {
     return this;
   }
 
+  /**
+   * Emits an import statement for each imported type, followed by a blank line if there were any.
+   * If this writer defers imports, the statements are written once the imports are known.
+   */
+  public void emitImports(boolean skipJavaLangImports) throws IOException {
+    if (deferredOutput != null) {
+      deferredOutput.add(new DeferredImports(skipJavaLangImports));
+      return;
+    }
+
+    int importedTypesCount = 0;
+    for (ClassName className : new TreeSet<>(importedTypes.values())) {
+      // TODO what about nested types like java.util.Map.Entry?
+      if (skipJavaLangImports
+          && className.packageName().equals("java.lang")
+          && !alwaysQualify.contains(className.simpleName)) {
+        continue;
+      }
+      emit("import $L;\n", className.withoutAnnotations());
+      importedTypesCount++;
+    }
+
+    if (importedTypesCount > 0) {
+      emit("\n");
+    }
+  }
+
   public void emitComment(CodeBlock codeBlock) throws IOException {
     trailingNewline = true; // Force the '//' prefix for the comment.
     comment = true;
@@ -177,15 +273,15 @@ final class CodeWriter {
   public void emitModifiers(Set<Modifier> modifiers, Set<Modifier> implicitModifiers)
       throws IOException {
     if (modifiers.isEmpty()) return;
-    for (Modifier modifier : EnumSet.copyOf(modifiers)) {
-      if (implicitModifiers.contains(modifier)) continue;
-      emitAndIndent(modifier.name().toLowerCase(Locale.US));
+    long bits = ModifierSet.bits(modifiers) & ~ModifierSet.bits(implicitModifiers);
+    for (; bits != 0L; bits &= bits - 1) {
+      emitAndIndent(ModifierSet.keyword(Long.numberOfTrailingZeros(bits)));
       emitAndIndent(" ");
     }
   }
 
   public void emitModifiers(Set<Modifier> modifiers) throws IOException {
-    emitModifiers(modifiers, Collections.emptySet());
+    emitModifiers(modifiers, ModifierSet.EMPTY);
   }
 
   /**
@@ -230,62 +326,86 @@ final class CodeWriter {
   }
 
   public CodeWriter emit(CodeBlock codeBlock, boolean ensureTrailingNewline) throws IOException {
-    int a = 0;
     ClassName deferredTypeName = null; // used by "import static" logic
-    ListIterator<String> partIterator = codeBlock.formatParts.listIterator();
-    while (partIterator.hasNext()) {
-      String part = partIterator.next();
-      switch (part) {
-        case "$L":
-          emitLiteral(codeBlock.args.get(a++));
+    if (codeBlock.children == null) {
+      deferredTypeName = emitLeaf(codeBlock, null);
+    } else {
+      for (CodeBlock leaf : codeBlock.leaves()) {
+        deferredTypeName = emitLeaf(leaf, deferredTypeName);
+      }
+    }
+    if (deferredTypeName != null) {
+      deferredTypeName.emit(this);
+    }
+    if (ensureTrailingNewline && lastChar() != '\n') {
+      emit("\n");
+    }
+    return this;
+  }
+
+  /**
+   * Emits the parts of {@code leaf}. A type that might be statically imported is deferred until
+   * the next part shows whether a member of it follows; that part may be in the next leaf, so the
+   * deferred type is passed in and returned.
+   */
+  private ClassName emitLeaf(CodeBlock leaf, ClassName deferredTypeName) throws IOException {
+    int a = 0;
+    int t = 0;
+    byte[] ops = leaf.ops;
+    for (int i = 0; i < ops.length; i++) {
+      if (deferredTypeName != null && ops[i] != CodeBlock.TEXT) {
+        deferredTypeName.emit(this);
+        deferredTypeName = null;
+      }
+      switch (ops[i]) {
+        case CodeBlock.LITERAL:
+          emitLiteral(leaf.args.get(a++));
           break;
 
-        case "$N":
-          emitAndIndent((String) codeBlock.args.get(a++));
+        case CodeBlock.NAME:
+          emitAndIndent((String) leaf.args.get(a++));
           break;
 
-        case "$S":
-          String string = (String) codeBlock.args.get(a++);
+        case CodeBlock.STRING:
+          String string = (String) leaf.args.get(a++);
+          if (importsOnly) break; // Don't escape strings that won't be written.
           // Emit null as a literal null: no quotes.
           emitAndIndent(string != null
               ? stringLiteralWithDoubleQuotes(string, indent)
               : "null");
           break;
 
-        case "$T":
-          TypeName typeName = (TypeName) codeBlock.args.get(a++);
-          // defer "typeName.emit(this)" if next format part will be handled by the default case
-          if (typeName instanceof ClassName && partIterator.hasNext()) {
-            if (!codeBlock.formatParts.get(partIterator.nextIndex()).startsWith("$")) {
-              ClassName candidate = (ClassName) typeName;
-              if (staticImportClassNames.contains(candidate.canonicalName)) {
-                checkState(deferredTypeName == null, "pending type for static import?!");
-                deferredTypeName = candidate;
-                break;
-              }
+        case CodeBlock.TYPE:
+          TypeName typeName = (TypeName) leaf.args.get(a++);
+          // defer "typeName.emit(this)" in case the next format part is handled by the default case
+          if (typeName instanceof ClassName) {
+            ClassName candidate = (ClassName) typeName;
+            if (staticImportClassNames.contains(candidate.canonicalName)) {
+              deferredTypeName = candidate;
+              break;
             }
           }
           typeName.emit(this);
           break;
 
-        case "$$":
+        case CodeBlock.DOLLAR:
           emitAndIndent("$");
           break;
 
-        case "$>":
+        case CodeBlock.INDENT:
           indent();
           break;
 
-        case "$<":
+        case CodeBlock.UNINDENT:
           unindent();
           break;
 
-        case "$[":
+        case CodeBlock.STATEMENT_BEGIN:
           checkState(statementLine == -1, "statement enter $[ followed by statement enter $[");
           statementLine = 0;
           break;
 
-        case "$]":
+        case CodeBlock.STATEMENT_END:
           checkState(statementLine != -1, "statement exit $] has no matching statement enter $[");
           if (statementLine > 0) {
             unindent(2); // End a multi-line statement. Decrease the indentation level.
@@ -293,15 +413,16 @@ final class CodeWriter {
           statementLine = -1;
           break;
 
-        case "$W":
-          out.wrappingSpace(indentLevel + 2);
+        case CodeBlock.WRAPPING_SPACE:
+          wrappingSpace(indentLevel + 2);
           break;
 
-        case "$Z":
-          out.zeroWidthSpace(indentLevel + 2);
+        case CodeBlock.ZERO_WIDTH_SPACE:
+          zeroWidthSpace(indentLevel + 2);
           break;
 
         default:
+          String part = leaf.texts[t++];
           // handle deferred type
           if (deferredTypeName != null) {
             if (part.startsWith(".")) {
@@ -318,14 +439,11 @@ final class CodeWriter {
           break;
       }
     }
-    if (ensureTrailingNewline && out.lastChar() != '\n') {
-      emit("\n");
-    }
-    return this;
+    return deferredTypeName;
   }
 
   public CodeWriter emitWrappingSpace() throws IOException {
-    out.wrappingSpace(indentLevel + 2);
+    wrappingSpace(indentLevel + 2);
     return this;
   }
 
@@ -356,18 +474,84 @@ final class CodeWriter {
   private void emitLiteral(Object o) throws IOException {
     if (o instanceof TypeSpec) {
       TypeSpec typeSpec = (TypeSpec) o;
-      typeSpec.emit(this, null, Collections.emptySet());
+      typeSpec.emit(this, null, ModifierSet.EMPTY);
     } else if (o instanceof AnnotationSpec) {
       AnnotationSpec annotationSpec = (AnnotationSpec) o;
       annotationSpec.emit(this, true);
     } else if (o instanceof CodeBlock) {
       CodeBlock codeBlock = (CodeBlock) o;
       emit(codeBlock);
-    } else {
+    } else if (!importsOnly) {
       emitAndIndent(String.valueOf(o));
     }
   }
 
+  /**
+   * Emits the qualifier that {@code className} needs in the current context, like {@code
+   * "java.util."} for {@code java.util.List}, or nothing if its simple name suffices. If the class
+   * is annotated, a non-empty qualifier is followed by a space to separate it from the annotations.
+   */
+  void emitQualifier(ClassName className) throws IOException {
+    if (importsOnly) {
+      lookupName(className);
+    } else if (deferredOutput != null) {
+      emitDeferredQualifier(className);
+    } else {
+      emitQualifier(className, lookupName(className));
+    }
+  }
+
+  private void emitQualifier(ClassName className, String qualifiedName) throws IOException {
+    int qualifierLength = qualifiedName.length() - className.simpleName.length();
+    if (qualifierLength == 0) return;
+    emitAndIndent(qualifiedName.substring(0, qualifierLength));
+    if (className.isAnnotated()) emit(" ");
+  }
+
+  /**
+   * Emits a placeholder for the qualifier of {@code className}. This collects importable types
+   * exactly like {@link #lookupName} does when there are no imports, and remembers the classes that
+   * were resolved in the current scope so the lookup can be completed once imports are known.
+   */
+  private void emitDeferredQualifier(ClassName className) throws IOException {
+    // If the top level simple name is masked by a current type variable, use the canonical name.
+    String topLevelSimpleName = className.topLevelClassName().simpleName();
+    if (currentTypeVariables.contains(topLevelSimpleName)) {
+      emitQualifier(className, className.canonicalName);
+      return;
+    }
+
+    // Resolve each suffix of className in the current scope, stopping at the first match.
+    ClassName[] resolvedInScope = null;
+    ClassName resolved = null;
+    boolean matched = false;
+    int i = 0;
+    for (ClassName c = className; c != null && !matched; c = c.enclosingClassName(), i++) {
+      resolved = resolve(c.simpleName());
+      if (resolved == null) continue;
+      matched = Objects.equals(resolved.canonicalName, c.canonicalName);
+      if (matched && i == 0) return; // The simple name suffices, whatever gets imported.
+      if (resolvedInScope == null) {
+        resolvedInScope = new ClassName[className.simpleNames().size()];
+      }
+      resolvedInScope[i] = resolved;
+    }
+
+    // If nothing resolved, record the type just like lookupName() does.
+    boolean samePackage = Objects.equals(packageName, className.packageName());
+    if (!matched && resolved == null) {
+      if (samePackage) {
+        referencedNames.add(topLevelSimpleName);
+      } else if (!javadoc) {
+        importableType(className);
+      }
+    }
+
+    emitLinePrefix();
+    deferredOutput.add(new DeferredQualifier(className, resolvedInScope, samePackage));
+    trailingNewline = false;
+  }
+
   /**
    * Returns the best name to identify {@code className} with in the current context. This uses the
    * available imports and the current scope to find the shortest name available. It does not honor
@@ -470,46 +654,143 @@ final class CodeWriter {
    * unnecessary trailing whitespace.
    */
   CodeWriter emitAndIndent(String s) throws IOException {
-    boolean first = true;
-    for (String line : LINE_BREAKING_PATTERN.split(s, -1)) {
-      // Emit a newline character. Make sure blank lines in Javadoc & comments look good.
-      if (!first) {
-        if ((javadoc || comment) && trailingNewline) {
-          emitIndentation();
-          out.append(javadoc ? " *" : "//");
-        }
-        out.append("\n");
-        trailingNewline = true;
-        if (statementLine != -1) {
-          if (statementLine == 0) {
-            indent(2); // Begin multiple-line statement. Increase the indentation level.
-          }
-          statementLine++;
-        }
+    if (importsOnly) return this;
+
+    int lineStart = 0;
+    int length = s.length();
+    while (true) {
+      int lineEnd = lineTerminator(s, lineStart);
+
+      if (lineEnd > lineStart) { // Don't indent empty lines.
+        emitLinePrefix();
+        append(s, lineStart, lineEnd);
+        trailingNewline = false;
       }
+      if (lineEnd == length) return this;
 
-      first = false;
-      if (line.isEmpty()) continue; // Don't indent empty lines.
+      // Skip the line terminator. Only CRLF is two characters.
+      lineStart = lineEnd + 1;
+      if (s.charAt(lineEnd) == '\r' && lineStart < length && s.charAt(lineStart) == '\n') {
+        lineStart++;
+      }
 
-      // Emit indentation and comment prefix if necessary.
-      if (trailingNewline) {
+      // Emit a newline character. Make sure blank lines in Javadoc & comments look good.
+      if ((javadoc || comment) && trailingNewline) {
         emitIndentation();
-        if (javadoc) {
-          out.append(" * ");
-        } else if (comment) {
-          out.append("// ");
+        append(javadoc ? " *" : "//");
+      }
+      append("\n");
+      trailingNewline = true;
+      if (statementLine != -1) {
+        if (statementLine == 0) {
+          indent(2); // Begin multiple-line statement. Increase the indentation level.
         }
+        statementLine++;
       }
+    }
+  }
 
-      out.append(line);
-      trailingNewline = false;
+  /**
+   * Returns the index of the first line terminator in {@code s} at or after {@code start}, or the
+   * length of {@code s} if there is none. This matches the same terminators as the {@code \R}
+   * pattern.
+   */
+  private static int lineTerminator(String s, int start) {
+    for (int i = start, length = s.length(); i < length; i++) {
+      char c = s.charAt(i);
+      if (c <= '\r') {
+        if (c >= '\n') return i; // \n, vertical tab, form feed and \r.
+      } else if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+        return i;
+      }
+    }
+    return s.length();
+  }
+
+  /** Emits indentation and comment prefix if this is the start of a line. */
+  private void emitLinePrefix() throws IOException {
+    if (trailingNewline) {
+      emitIndentation();
+      if (javadoc) {
+        append(" * ");
+      } else if (comment) {
+        append("// ");
+      }
     }
-    return this;
   }
 
   private void emitIndentation() throws IOException {
-    for (int j = 0; j < indentLevel; j++) {
-      out.append(indent);
+    if (indentLevel > 0) {
+      append(indentation.get(indentLevel));
+    }
+  }
+
+  private void append(String s) throws IOException {
+    append(s, 0, s.length());
+  }
+
+  private void append(String s, int start, int end) throws IOException {
+    if (out != null) {
+      out.append(s, start, end);
+    } else if (start < end) {
+      if (unwrappedOut instanceof Writer) {
+        ((Writer) unwrappedOut).write(s, start, end - start); // Writer.append() copies the range.
+      } else if (unwrappedOut != null) {
+        unwrappedOut.append(s, start, end);
+      } else if (deferredOutput != null) {
+        deferredOutput.add(s.substring(start, end));
+      }
+      lastChar = s.charAt(end - 1);
+    }
+  }
+
+  private void wrappingSpace(int indentLevel) throws IOException {
+    if (out != null) {
+      out.wrappingSpace(indentLevel);
+    } else if (unwrappedOut != null) {
+      // Like a pending wrap in a LineWrapper, this space doesn't count as the last character.
+      unwrappedOut.append(' ');
+    } else if (deferredOutput != null) {
+      deferredOutput.add(new LineWrap(false, indentLevel));
+    }
+  }
+
+  private void zeroWidthSpace(int indentLevel) throws IOException {
+    if (out != null) {
+      out.zeroWidthSpace(indentLevel);
+    } else if (deferredOutput != null) {
+      deferredOutput.add(new LineWrap(true, indentLevel));
+    }
+  }
+
+  private char lastChar() {
+    return out != null ? out.lastChar() : lastChar;
+  }
+
+  /**
+   * Writes the code emitted to this deferring writer to {@code out}. Each type is named as it would
+   * have been by a writer that knew the {@linkplain #suggestedImports() suggested imports} upfront.
+   */
+  void writeDeferred(Appendable out) throws IOException {
+    checkState(deferredOutput != null, "imports are not deferred");
+    CodeWriter codeWriter = new CodeWriter(
+        out, indent, columnLimit, suggestedImports(), staticImports, alwaysQualify);
+    for (Object segment : deferredOutput) {
+      if (segment instanceof String) {
+        codeWriter.append((String) segment);
+      } else if (segment instanceof DeferredQualifier) {
+        DeferredQualifier qualifier = (DeferredQualifier) segment;
+        codeWriter.append(qualifier.resolve(codeWriter.importedTypes));
+      } else if (segment instanceof LineWrap) {
+        LineWrap lineWrap = (LineWrap) segment;
+        if (lineWrap.zeroWidth) {
+          codeWriter.zeroWidthSpace(lineWrap.indentLevel);
+        } else {
+          codeWriter.wrappingSpace(lineWrap.indentLevel);
+        }
+      } else {
+        codeWriter.emitImports(((DeferredImports) segment).skipJavaLangImports);
+      }
     }
   }
 
@@ -523,6 +804,72 @@ final class CodeWriter {
     return result;
   }
 
+  /** A point where a deferred line may wrap. */
+  private static final class LineWrap {
+    final boolean zeroWidth;
+    final int indentLevel;
+
+    LineWrap(boolean zeroWidth, int indentLevel) {
+      this.zeroWidth = zeroWidth;
+      this.indentLevel = indentLevel;
+    }
+  }
+
+  /** The position of the import statements in deferred output. */
+  private static final class DeferredImports {
+    final boolean skipJavaLangImports;
+
+    DeferredImports(boolean skipJavaLangImports) {
+      this.skipJavaLangImports = skipJavaLangImports;
+    }
+  }
+
+  /**
+   * The qualifier of a type name in deferred output. This completes {@link #lookupName} once the
+   * imports are known.
+   */
+  private static final class DeferredQualifier {
+    final ClassName className;
+    /** The classes that each suffix of className resolved to in scope, or null if none did. */
+    final ClassName[] resolvedInScope;
+    final boolean samePackage;
+
+    DeferredQualifier(ClassName className, ClassName[] resolvedInScope, boolean samePackage) {
+      this.className = className;
+      this.resolvedInScope = resolvedInScope;
+      this.samePackage = samePackage;
+    }
+
+    String resolve(Map<String, ClassName> importedTypes) {
+      String qualifiedName = qualifiedName(importedTypes);
+      String qualifier = qualifiedName.substring(
+          0, qualifiedName.length() - className.simpleName.length());
+      return !qualifier.isEmpty() && className.isAnnotated() ? qualifier + " " : qualifier;
+    }
+
+    private String qualifiedName(Map<String, ClassName> importedTypes) {
+      boolean nameResolved = false;
+      int i = 0;
+      for (ClassName c = className; c != null; c = c.enclosingClassName(), i++) {
+        ClassName resolved = resolvedInScope != null && resolvedInScope[i] != null
+            ? resolvedInScope[i]
+            : importedTypes.get(c.simpleName());
+        nameResolved = resolved != null;
+
+        if (resolved != null && Objects.equals(resolved.canonicalName, c.canonicalName)) {
+          int suffixOffset = c.simpleNames().size() - 1;
+          return join(".", className.simpleNames().subList(
+              suffixOffset, className.simpleNames().size()));
+        }
+      }
+
+      if (nameResolved || !samePackage) {
+        return className.canonicalName;
+      }
+      return join(".", className.simpleNames());
+    }
+  }
+
   // A makeshift multi-set implementation
   private static final class Multiset<T> {
     private final Map<T, Integer> map = new LinkedHashMap<>();
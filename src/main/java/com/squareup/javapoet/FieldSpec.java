@@ -37,12 +37,15 @@ public final class FieldSpec {
   public final Set<Modifier> modifiers;
   public final CodeBlock initializer;
 
+  /** Lazily-initialized toString of this spec. */
+  private String cachedString;
+
   private FieldSpec(Builder builder) {
     this.type = checkNotNull(builder.type, "type == null");
     this.name = checkNotNull(builder.name, "name == null");
     this.javadoc = builder.javadoc.build();
     this.annotations = Util.immutableList(builder.annotations);
-    this.modifiers = Util.immutableSet(builder.modifiers);
+    this.modifiers = ModifierSet.of(builder.modifiers);
     this.initializer = (builder.initializer == null)
         ? CodeBlock.builder().build()
         : builder.initializer;
@@ -68,22 +71,41 @@ public final class FieldSpec {
     if (this == o) return true;
     if (o == null) return false;
     if (getClass() != o.getClass()) return false;
-    return toString().equals(o.toString());
+    FieldSpec that = (FieldSpec) o;
+    if (structurallyEquals(that)) return true;
+    return hashCode() == that.hashCode() && toString().equals(that.toString());
   }
 
   @Override public int hashCode() {
     return toString().hashCode();
   }
 
+  /** Returns true if this and {@code that} were built from the same parts. */
+  @SuppressWarnings("ReferenceEquality")
+  boolean structurallyEquals(FieldSpec that) {
+    if (this == that) return true;
+    return name.equals(that.name)
+        && type.equals(that.type)
+        && modifiers.equals(that.modifiers)
+        && Util.pairwiseEquals(annotations, that.annotations, AnnotationSpec::structurallyEquals)
+        && javadoc.structurallyEquals(that.javadoc)
+        && initializer.structurallyEquals(that.initializer);
+  }
+
   @Override public String toString() {
-    StringBuilder out = new StringBuilder();
-    try {
-      CodeWriter codeWriter = new CodeWriter(out);
-      emit(codeWriter, Collections.emptySet());
-      return out.toString();
-    } catch (IOException e) {
-      throw new AssertionError();
+    String result = cachedString;
+    if (result == null) {
+      StringBuilder out = new StringBuilder();
+      try {
+        CodeWriter codeWriter = new CodeWriter(out);
+        emit(codeWriter, Collections.emptySet());
+      } catch (IOException e) {
+        throw new AssertionError();
+      }
+      result = out.toString();
+      cachedString = result;
     }
+    return result;
   }
 
   public static Builder builder(TypeName type, String name, Modifier... modifiers) {
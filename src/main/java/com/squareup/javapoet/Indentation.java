@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet;
+
+import java.util.Arrays;
+
+import static com.squareup.javapoet.Util.checkNotNull;
+
+/**
+ * The indentation strings for each nesting level of one indent unit, so that indenting a line is a
+ * single append. Levels are computed on demand. Each {@link CodeWriter} has its own table, which it
+ * shares with its {@link LineWrapper}, so tables are confined to one thread and live only as long
+ * as the writer that uses them.
+ */
+final class Indentation {
+  private final String unit;
+
+  /** Indentation by level, grown when a deeper level is requested. */
+  private String[] levels;
+
+  Indentation(String unit) {
+    this.unit = checkNotNull(unit, "indent == null");
+    this.levels = new String[] {"", unit};
+  }
+
+  /** Returns {@code level} repetitions of the indent unit. */
+  String get(int level) {
+    return level < levels.length ? levels[level] : grow(level);
+  }
+
+  private String grow(int level) {
+    String[] grown = Arrays.copyOf(levels, Math.max(level + 1, levels.length * 2));
+    for (int i = levels.length; i < grown.length; i++) {
+      grown[i] = grown[i - 1] + unit;
+    }
+    levels = grown;
+    return grown[level];
+  }
+}
@@ -15,10 +15,12 @@
  */
 package com.squareup.javapoet;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.URI;
@@ -44,33 +46,30 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 /** A Java file containing a single top level class. */
 public final class JavaFile {
-  private static final Appendable NULL_APPENDABLE = new Appendable() {
-    @Override public Appendable append(CharSequence charSequence) {
-      return this;
-    }
-    @Override public Appendable append(CharSequence charSequence, int start, int end) {
-      return this;
-    }
-    @Override public Appendable append(char c) {
-      return this;
-    }
-  };
-
   public final CodeBlock fileComment;
   public final String packageName;
   public final TypeSpec typeSpec;
   public final boolean skipJavaLangImports;
+  private final boolean singlePass;
   private final Set<String> staticImports;
   private final Set<String> alwaysQualify;
   private final String indent;
+  private final int columnLimit;
+  private final LineWrapping lineWrapping;
+
+  /** Lazily-initialized toString of this spec. */
+  private String cachedString;
 
   private JavaFile(Builder builder) {
     this.fileComment = builder.fileComment.build();
     this.packageName = builder.packageName;
     this.typeSpec = builder.typeSpec;
     this.skipJavaLangImports = builder.skipJavaLangImports;
+    this.singlePass = builder.singlePass;
     this.staticImports = Util.immutableSet(builder.staticImports);
     this.indent = builder.indent;
+    this.columnLimit = builder.columnLimit;
+    this.lineWrapping = builder.lineWrapping;
 
     Set<String> alwaysQualifiedNames = new LinkedHashSet<>();
     fillAlwaysQualifiedNames(builder.typeSpec, alwaysQualifiedNames);
@@ -85,22 +84,32 @@ public final class JavaFile {
   }
 
   public void writeTo(Appendable out) throws IOException {
-    // First pass: emit the entire class, just to collect the types we'll need to import.
-    CodeWriter importsCollector = new CodeWriter(
-        NULL_APPENDABLE,
-        indent,
-        staticImports,
-        alwaysQualify
-    );
+    if (singlePass) {
+      // Emit the entire class once, deferring the names of types until we know which to import.
+      CodeWriter codeWriter = CodeWriter.deferringImports(
+          indent, effectiveColumnLimit(), staticImports, alwaysQualify);
+      emit(codeWriter);
+      codeWriter.writeDeferred(out);
+      return;
+    }
+
+    // First pass: visit the entire class without producing code, just to collect the types we'll
+    // need to import.
+    CodeWriter importsCollector
+        = CodeWriter.collectingImports(indent, staticImports, alwaysQualify);
     emit(importsCollector);
     Map<String, ClassName> suggestedImports = importsCollector.suggestedImports();
 
     // Second pass: write the code, taking advantage of the imports.
-    CodeWriter codeWriter
-        = new CodeWriter(out, indent, suggestedImports, staticImports, alwaysQualify);
+    CodeWriter codeWriter = new CodeWriter(
+        out, indent, effectiveColumnLimit(), suggestedImports, staticImports, alwaysQualify);
     emit(codeWriter);
   }
 
+  private int effectiveColumnLimit() {
+    return lineWrapping == LineWrapping.NEVER ? CodeWriter.NO_COLUMN_LIMIT : columnLimit;
+  }
+
   /** Writes this to {@code directory} as UTF-8 using the standard directory structure. */
   public void writeTo(Path directory) throws IOException {
     writeToPath(directory);
@@ -128,22 +137,106 @@ public final class JavaFile {
    * Returns the {@link Path} instance to which source is actually written.
    */
   public Path writeToPath(Path directory, Charset charset) throws IOException {
+    Path outputPath = createOutputPath(directory);
+    writeSource(outputPath, charset);
+    return outputPath;
+  }
+
+  /**
+   * Writes this to {@code directory} as UTF-8 using the standard directory structure, unless the
+   * file there already has the same content.
+   *
+   * @see #writeToPathIfChanged(Path, Charset)
+   */
+  public boolean writeToPathIfChanged(Path directory) throws IOException {
+    return writeToPathIfChanged(directory, UTF_8);
+  }
+
+  /**
+   * Writes this to {@code directory} with the provided {@code charset} using the standard directory
+   * structure, unless the file there already has the same content. An unchanged file is left
+   * untouched, including its last modified time, so incremental builds don't treat it as changed.
+   * Returns true if the file was written.
+   */
+  public boolean writeToPathIfChanged(Path directory, Charset charset) throws IOException {
+    Path outputPath = createOutputPath(directory);
+    byte[] content;
+    int length;
+    if (charset.equals(UTF_8)) {
+      Utf8Buffer buffer = new Utf8Buffer();
+      writeTo(buffer);
+      content = buffer.bytes();
+      length = buffer.size();
+    } else {
+      StringBuilder source = new StringBuilder();
+      writeTo(source);
+      content = source.toString().getBytes(charset);
+      length = content.length;
+    }
+    if (hasContent(outputPath, content, length)) return false;
+    try (OutputStream out = Files.newOutputStream(outputPath)) {
+      out.write(content, 0, length);
+    }
+    return true;
+  }
+
+  /** Returns true if the file at {@code path} holds exactly {@code content[0..length)}. */
+  private static boolean hasContent(Path path, byte[] content, int length) throws IOException {
+    if (!Files.isRegularFile(path) || Files.size(path) != length) return false;
+    try (InputStream in = Files.newInputStream(path)) {
+      byte[] buffer = new byte[8192];
+      int offset = 0;
+      int count = in.read(buffer);
+      while (count != -1) {
+        if (offset + count > length) return false;
+        for (int i = 0; i < count; i++) {
+          if (buffer[i] != content[offset + i]) return false;
+        }
+        offset += count;
+        count = in.read(buffer);
+      }
+      return offset == length;
+    }
+  }
+
+  /** Creates the package directories below {@code directory} and returns this file's path. */
+  private Path createOutputPath(Path directory) throws IOException {
     checkArgument(Files.notExists(directory) || Files.isDirectory(directory),
         "path %s exists but is not a directory.", directory);
-    Path outputDirectory = directory;
+    Path outputDirectory = packageDirectory(directory);
+    if (!packageName.isEmpty()) {
+      Files.createDirectories(outputDirectory);
+    }
+    return outputDirectory.resolve(typeSpec.name + ".java");
+  }
+
+  /** Returns the directory for this file's package in the standard structure below {@code root}. */
+  Path packageDirectory(Path root) {
+    Path result = root;
     if (!packageName.isEmpty()) {
       for (String packageComponent : packageName.split("\\.")) {
-        outputDirectory = outputDirectory.resolve(packageComponent);
+        result = result.resolve(packageComponent);
       }
-      Files.createDirectories(outputDirectory);
     }
+    return result;
+  }
 
-    Path outputPath = outputDirectory.resolve(typeSpec.name + ".java");
-    try (Writer writer = new OutputStreamWriter(Files.newOutputStream(outputPath), charset)) {
-      writeTo(writer);
+  /** Writes this to {@code outputPath}, whose directory must already exist. */
+  void writeSource(Path outputPath, Charset charset) throws IOException {
+    if (charset.equals(UTF_8)) {
+      // Encode the whole file in memory, then write it with a single call.
+      Utf8Buffer buffer = new Utf8Buffer();
+      writeTo(buffer);
+      try (OutputStream out = Files.newOutputStream(outputPath)) {
+        buffer.writeTo(out);
+      }
+      return;
     }
 
-    return outputPath;
+    try (Writer writer = new BufferedWriter(
+        new OutputStreamWriter(Files.newOutputStream(outputPath), charset))) {
+      writeTo(writer);
+    }
   }
 
   /** Writes this to {@code directory} as UTF-8 using the standard directory structure. */
@@ -198,21 +291,7 @@ public final class JavaFile {
       codeWriter.emit("\n");
     }
 
-    int importedTypesCount = 0;
-    for (ClassName className : new TreeSet<>(codeWriter.importedTypes().values())) {
-      // TODO what about nested types like java.util.Map.Entry?
-      if (skipJavaLangImports
-          && className.packageName().equals("java.lang")
-          && !alwaysQualify.contains(className.simpleName)) {
-        continue;
-      }
-      codeWriter.emit("import $L;\n", className.withoutAnnotations());
-      importedTypesCount++;
-    }
-
-    if (importedTypesCount > 0) {
-      codeWriter.emit("\n");
-    }
+    codeWriter.emitImports(skipJavaLangImports);
 
     typeSpec.emit(codeWriter, null, Collections.emptySet());
 
@@ -223,21 +302,41 @@ public final class JavaFile {
     if (this == o) return true;
     if (o == null) return false;
     if (getClass() != o.getClass()) return false;
-    return toString().equals(o.toString());
+    JavaFile that = (JavaFile) o;
+    if (structurallyEquals(that)) return true;
+    return hashCode() == that.hashCode() && toString().equals(that.toString());
   }
 
   @Override public int hashCode() {
     return toString().hashCode();
   }
 
+  /** Returns true if this and {@code that} were built from the same parts. */
+  @SuppressWarnings("ReferenceEquality")
+  boolean structurallyEquals(JavaFile that) {
+    if (this == that) return true;
+    return packageName.equals(that.packageName)
+        && skipJavaLangImports == that.skipJavaLangImports
+        && indent.equals(that.indent)
+        && effectiveColumnLimit() == that.effectiveColumnLimit()
+        && staticImports.equals(that.staticImports)
+        && fileComment.structurallyEquals(that.fileComment)
+        && typeSpec.structurallyEquals(that.typeSpec);
+  }
+
   @Override public String toString() {
-    try {
-      StringBuilder result = new StringBuilder();
-      writeTo(result);
-      return result.toString();
-    } catch (IOException e) {
-      throw new AssertionError();
+    String result = cachedString;
+    if (result == null) {
+      StringBuilder out = new StringBuilder();
+      try {
+        writeTo(out);
+      } catch (IOException e) {
+        throw new AssertionError();
+      }
+      result = out.toString();
+      cachedString = result;
     }
+    return result;
   }
 
   public JavaFileObject toJavaFileObject() {
@@ -269,16 +368,37 @@ public final class JavaFile {
     Builder builder = new Builder(packageName, typeSpec);
     builder.fileComment.add(fileComment);
     builder.skipJavaLangImports = skipJavaLangImports;
+    builder.singlePass = singlePass;
     builder.indent = indent;
+    builder.columnLimit = columnLimit;
+    builder.lineWrapping = lineWrapping;
     return builder;
   }
 
+  /** Where generated lines are broken. */
+  public enum LineWrapping {
+    /**
+     * Break lines that would exceed the column limit at their wrapping points: {@code $W} and
+     * {@code $Z}. This is the default.
+     */
+    AT_COLUMN_LIMIT,
+
+    /**
+     * Never break lines: {@code $W} is always a space and {@code $Z} is always empty. This is the
+     * fastest way to emit code that will be reformatted anyway.
+     */
+    NEVER
+  }
+
   public static final class Builder {
     private final String packageName;
     private final TypeSpec typeSpec;
     private final CodeBlock.Builder fileComment = CodeBlock.builder();
     private boolean skipJavaLangImports;
+    private boolean singlePass;
     private String indent = "  ";
+    private int columnLimit = CodeWriter.DEFAULT_COLUMN_LIMIT;
+    private LineWrapping lineWrapping = LineWrapping.AT_COLUMN_LIMIT;
 
     public final Set<String> staticImports = new TreeSet<>();
 
@@ -324,11 +444,39 @@ public final class JavaFile {
       return this;
     }
 
+    /**
+     * Call this to emit the file in a single pass over its types.
+     *
+     * <p>By default, JavaPoet emits each file twice: first to collect the types to import, and then
+     * to write the code using those imports. In a single pass, the names of types are deferred
+     * until all code has been emitted and the imports are known. This produces the same code in
+     * roughly half the time, but holds the emitted code in memory until it is written.
+     */
+    public Builder singlePass(boolean singlePass) {
+      this.singlePass = singlePass;
+      return this;
+    }
+
     public Builder indent(String indent) {
       this.indent = indent;
       return this;
     }
 
+    /**
+     * Sets the column that lines are wrapped before, 100 by default. Lines only wrap at wrapping
+     * points, so a line without any may still exceed this limit.
+     */
+    public Builder columnLimit(int columnLimit) {
+      checkArgument(columnLimit > 0, "columnLimit must be positive: %s", columnLimit);
+      this.columnLimit = columnLimit;
+      return this;
+    }
+
+    public Builder lineWrapping(LineWrapping lineWrapping) {
+      this.lineWrapping = checkNotNull(lineWrapping, "lineWrapping == null");
+      return this;
+    }
+
     public JavaFile build() {
       return new JavaFile(this);
     }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.squareup.javapoet.Util.checkArgument;
+import static com.squareup.javapoet.Util.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/** Writes many {@link JavaFile Java files} at once. */
+public final class JavaFiles {
+  private JavaFiles() {
+  }
+
+  /**
+   * Writes {@code javaFiles} to {@code directory} as UTF-8 using the standard directory structure.
+   * Returns the paths that sources are written to, in the order of {@code javaFiles}.
+   *
+   * @see #writeAll(Collection, Path, Charset, Executor)
+   */
+  public static List<Path> writeAll(Collection<JavaFile> javaFiles, Path directory,
+      Executor executor) throws IOException {
+    return writeAll(javaFiles, directory, UTF_8, executor);
+  }
+
+  /**
+   * Writes {@code javaFiles} to {@code directory} with the provided {@code charset} using the
+   * standard directory structure. Returns the paths that sources are written to, in the order of
+   * {@code javaFiles}.
+   *
+   * <p>Package directories are created upfront, once per package. Each file is then rendered and
+   * written by a task on {@code executor}. The calling thread runs the tasks that {@code executor}
+   * hasn't started once all are submitted, including tasks that it rejects or discards, and this
+   * method returns once all tasks are done. A file that fails to be written doesn't stop the
+   * others: after all tasks are done this throws an {@link IOException} with a suppressed
+   * exception for each file that failed.
+   */
+  public static List<Path> writeAll(Collection<JavaFile> javaFiles, Path directory,
+      Charset charset, Executor executor) throws IOException {
+    checkNotNull(javaFiles, "javaFiles == null");
+    checkNotNull(charset, "charset == null");
+    checkNotNull(executor, "executor == null");
+    checkArgument(Files.notExists(directory) || Files.isDirectory(directory),
+        "path %s exists but is not a directory.", directory);
+
+    JavaFile[] files = javaFiles.toArray(new JavaFile[0]);
+    List<Path> outputPaths = new ArrayList<>(files.length);
+    Map<String, Path> packageDirectories = new HashMap<>();
+    Set<Path> uniqueOutputPaths = new HashSet<>();
+    for (JavaFile javaFile : files) {
+      Path packageDirectory = packageDirectories.get(javaFile.packageName);
+      if (packageDirectory == null) {
+        packageDirectory = javaFile.packageDirectory(directory);
+        Files.createDirectories(packageDirectory);
+        packageDirectories.put(javaFile.packageName, packageDirectory);
+      }
+      Path outputPath = packageDirectory.resolve(javaFile.typeSpec.name + ".java");
+      checkArgument(uniqueOutputPaths.add(outputPath), "%s is written more than once", outputPath);
+      outputPaths.add(outputPath);
+    }
+
+    // Each task runs once, on whichever thread claims it first. After submitting all tasks, this
+    // thread runs the ones that the executor hasn't started, so tasks that it rejects, discards or
+    // queues behind other work never leave this method waiting.
+    WriteTask[] tasks = new WriteTask[files.length];
+    for (int i = 0; i < files.length; i++) {
+      tasks[i] = new WriteTask(files[i], outputPaths.get(i), charset);
+      try {
+        executor.execute(tasks[i]);
+      } catch (RejectedExecutionException e) {
+        // Run below.
+      }
+    }
+    for (WriteTask task : tasks) {
+      task.run();
+    }
+    Throwable[] failures = new Throwable[files.length];
+    for (int i = 0; i < files.length; i++) {
+      failures[i] = tasks[i].done.join();
+    }
+
+    int failureCount = 0;
+    for (Throwable failure : failures) {
+      if (failure != null) failureCount++;
+    }
+    if (failureCount > 0) {
+      IOException exception = new IOException(
+          String.format("failed to write %s of %s files", failureCount, files.length));
+      for (int i = 0; i < files.length; i++) {
+        if (failures[i] == null) continue;
+        exception.addSuppressed(
+            new IOException("failed to write " + outputPaths.get(i), failures[i]));
+      }
+      throw exception;
+    }
+
+    return Collections.unmodifiableList(outputPaths);
+  }
+
+  /** Writes one file, on the first thread that runs it. */
+  private static final class WriteTask implements Runnable {
+    private final JavaFile javaFile;
+    private final Path outputPath;
+    private final Charset charset;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    /** Completes with the failure of this task, or null if it succeeded. */
+    final CompletableFuture<Throwable> done = new CompletableFuture<>();
+
+    WriteTask(JavaFile javaFile, Path outputPath, Charset charset) {
+      this.javaFile = javaFile;
+      this.outputPath = outputPath;
+      this.charset = charset;
+    }
+
+    @Override public void run() {
+      if (!claimed.compareAndSet(false, true)) return;
+      Throwable failure = null;
+      try {
+        javaFile.writeSource(outputPath, charset);
+      } catch (Throwable t) {
+        failure = t;
+      }
+      done.complete(failure);
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.squareup.javapoet;
 
 import java.io.IOException;
+import java.io.Writer;
 
 import static com.squareup.javapoet.Util.checkNotNull;
 
@@ -25,7 +26,7 @@ import static com.squareup.javapoet.Util.checkNotNull;
  */
 final class LineWrapper {
   private final RecordingAppendable out;
-  private final String indent;
+  private final Indentation indentation;
   private final int columnLimit;
   private boolean closed;
 
@@ -46,9 +47,13 @@ final class LineWrapper {
   private FlushType nextFlush;
 
   LineWrapper(Appendable out, String indent, int columnLimit) {
+    this(out, new Indentation(indent), columnLimit);
+  }
+
+  LineWrapper(Appendable out, Indentation indentation, int columnLimit) {
     checkNotNull(out, "out == null");
     this.out = new RecordingAppendable(out);
-    this.indent = indent;
+    this.indentation = indentation;
     this.columnLimit = columnLimit;
   }
 
@@ -59,29 +64,36 @@ final class LineWrapper {
 
   /** Emit {@code s}. This may be buffered to permit line wraps to be inserted. */
   void append(String s) throws IOException {
+    append(s, 0, s.length());
+  }
+
+  /** Emit the characters of {@code s} from {@code start} until {@code end}. */
+  void append(String s, int start, int end) throws IOException {
     if (closed) throw new IllegalStateException("closed");
 
+    int length = end - start;
     if (nextFlush != null) {
-      int nextNewline = s.indexOf('\n');
+      int nextNewline = s.indexOf('\n', start);
+      if (nextNewline >= end) nextNewline = -1;
 
       // If s doesn't cause the current line to cross the limit, buffer it and return. We'll decide
       // whether or not we have to wrap it later.
-      if (nextNewline == -1 && column + s.length() <= columnLimit) {
-        buffer.append(s);
-        column += s.length();
+      if (nextNewline == -1 && column + length <= columnLimit) {
+        buffer.append(s, start, end);
+        column += length;
         return;
       }
 
       // Wrap if appending s would overflow the current line.
-      boolean wrap = nextNewline == -1 || column + nextNewline > columnLimit;
+      boolean wrap = nextNewline == -1 || column + nextNewline - start > columnLimit;
       flush(wrap ? FlushType.WRAP : nextFlush);
     }
 
-    out.append(s);
-    int lastNewline = s.lastIndexOf('\n');
-    column = lastNewline != -1
-        ? s.length() - lastNewline - 1
-        : column + s.length();
+    out.append(s, start, end);
+    int lastNewline = s.lastIndexOf('\n', end - 1);
+    column = lastNewline >= start
+        ? end - lastNewline - 1
+        : column + length;
   }
 
   /** Emit either a space or a newline character. */
@@ -114,12 +126,10 @@ final class LineWrapper {
   private void flush(FlushType flushType) throws IOException {
     switch (flushType) {
       case WRAP:
+        String indent = indentation.get(indentLevel);
         out.append('\n');
-        for (int i = 0; i < indentLevel; i++) {
-          out.append(indent);
-        }
-        column = indentLevel * indent.length();
-        column += buffer.length();
+        out.append(indent);
+        column = indent.length() + buffer.length();
         break;
       case SPACE:
         out.append(' ');
@@ -130,8 +140,8 @@ final class LineWrapper {
         throw new IllegalArgumentException("Unknown FlushType: " + flushType);
     }
 
-    out.append(buffer);
-    buffer.delete(0, buffer.length());
+    out.append(buffer, 0, buffer.length());
+    buffer.setLength(0);
     indentLevel = -1;
     nextFlush = null;
   }
@@ -140,32 +150,60 @@ final class LineWrapper {
     WRAP, SPACE, EMPTY;
   }
 
-  /** A delegating {@link Appendable} that records info about the chars passing through it. */
+  /**
+   * A delegating {@link Appendable} that records info about the chars passing through it. Ranges
+   * are forwarded without copying them, even to a {@link Writer}, whose {@code append} methods
+   * would otherwise copy each range into a new string.
+   */
   static final class RecordingAppendable implements Appendable {
     private final Appendable delegate;
 
+    /** The delegate if it is a writer, otherwise null. */
+    private final Writer writer;
+
+    /** Scratch space for copying ranges of non-string sequences to {@link #writer}. */
+    private char[] chars;
+
     char lastChar = Character.MIN_VALUE;
 
     RecordingAppendable(Appendable delegate) {
       this.delegate = delegate;
+      this.writer = delegate instanceof Writer ? (Writer) delegate : null;
     }
 
     @Override public Appendable append(CharSequence csq) throws IOException {
-      int length = csq.length();
-      if (length != 0) {
-        lastChar = csq.charAt(length - 1);
-      }
-      return delegate.append(csq);
+      return append(csq, 0, csq.length());
     }
 
     @Override public Appendable append(CharSequence csq, int start, int end) throws IOException {
-      CharSequence sub = csq.subSequence(start, end);
-      return append(sub);
+      if (end <= start) return this;
+      lastChar = csq.charAt(end - 1);
+
+      if (writer == null) {
+        if (start == 0 && end == csq.length()) {
+          delegate.append(csq); // StringBuilder copies whole sequences faster than ranges.
+        } else {
+          delegate.append(csq, start, end);
+        }
+      } else if (csq instanceof String) {
+        writer.write((String) csq, start, end - start);
+      } else if (csq instanceof StringBuilder) {
+        int length = end - start;
+        if (chars == null || chars.length < length) {
+          chars = new char[Math.max(length, 256)];
+        }
+        ((StringBuilder) csq).getChars(start, end, chars, 0);
+        writer.write(chars, 0, length);
+      } else {
+        writer.append(csq, start, end);
+      }
+      return this;
     }
 
     @Override public Appendable append(char c) throws IOException {
       lastChar = c;
-      return delegate.append(c);
+      delegate.append(c);
+      return this;
     }
   }
 }
@@ -23,6 +23,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
@@ -55,6 +56,9 @@ public final class MethodSpec {
   public final CodeBlock code;
   public final CodeBlock defaultValue;
 
+  /** Lazily-initialized toString of this spec. */
+  private String cachedString;
+
   private MethodSpec(Builder builder) {
     CodeBlock code = builder.code.build();
     checkArgument(code.isEmpty() || !builder.modifiers.contains(Modifier.ABSTRACT),
@@ -65,7 +69,7 @@ public final class MethodSpec {
     this.name = checkNotNull(builder.name, "name == null");
     this.javadoc = builder.javadoc.build();
     this.annotations = Util.immutableList(builder.annotations);
-    this.modifiers = Util.immutableSet(builder.modifiers);
+    this.modifiers = ModifierSet.of(builder.modifiers);
     this.typeVariables = Util.immutableList(builder.typeVariables);
     this.returnType = builder.returnType;
     this.parameters = Util.immutableList(builder.parameters);
@@ -166,22 +170,46 @@ public final class MethodSpec {
     if (this == o) return true;
     if (o == null) return false;
     if (getClass() != o.getClass()) return false;
-    return toString().equals(o.toString());
+    MethodSpec that = (MethodSpec) o;
+    if (structurallyEquals(that)) return true;
+    return hashCode() == that.hashCode() && toString().equals(that.toString());
   }
 
   @Override public int hashCode() {
     return toString().hashCode();
   }
 
+  /** Returns true if this and {@code that} were built from the same parts. */
+  @SuppressWarnings("ReferenceEquality")
+  boolean structurallyEquals(MethodSpec that) {
+    if (this == that) return true;
+    return name.equals(that.name)
+        && varargs == that.varargs
+        && Objects.equals(returnType, that.returnType)
+        && modifiers.equals(that.modifiers)
+        && exceptions.equals(that.exceptions)
+        && TypeVariableName.declarationsEqual(typeVariables, that.typeVariables)
+        && Util.pairwiseEquals(parameters, that.parameters, ParameterSpec::structurallyEquals)
+        && Util.pairwiseEquals(annotations, that.annotations, AnnotationSpec::structurallyEquals)
+        && javadoc.structurallyEquals(that.javadoc)
+        && code.structurallyEquals(that.code)
+        && Util.nullSafeEquals(defaultValue, that.defaultValue, CodeBlock::structurallyEquals);
+  }
+
   @Override public String toString() {
-    StringBuilder out = new StringBuilder();
-    try {
-      CodeWriter codeWriter = new CodeWriter(out);
-      emit(codeWriter, "Constructor", Collections.emptySet());
-      return out.toString();
-    } catch (IOException e) {
-      throw new AssertionError();
+    String result = cachedString;
+    if (result == null) {
+      StringBuilder out = new StringBuilder();
+      try {
+        CodeWriter codeWriter = new CodeWriter(out);
+        emit(codeWriter, "Constructor", Collections.emptySet());
+      } catch (IOException e) {
+        throw new AssertionError();
+      }
+      result = out.toString();
+      cachedString = result;
     }
+    return result;
   }
 
   public static Builder methodBuilder(String name) {
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import javax.lang.model.element.Modifier;
+
+import static com.squareup.javapoet.Util.checkNotNull;
+
+/**
+ * An immutable set of modifiers stored as a bitmask. Like {@link java.util.EnumSet}, it iterates
+ * in the order {@link Modifier} declares its constants, which is the order modifiers are emitted
+ * in.
+ */
+final class ModifierSet extends AbstractSet<Modifier> {
+  private static final Modifier[] VALUES = Modifier.values();
+  private static final String[] KEYWORDS = new String[VALUES.length];
+  static final ModifierSet EMPTY = new ModifierSet(0L);
+
+  static {
+    for (Modifier modifier : VALUES) {
+      KEYWORDS[modifier.ordinal()] = modifier.name().toLowerCase(Locale.US);
+    }
+  }
+
+  private final long bits;
+
+  private ModifierSet(long bits) {
+    this.bits = bits;
+  }
+
+  static ModifierSet of(Modifier... modifiers) {
+    long bits = 0L;
+    for (Modifier modifier : modifiers) {
+      bits |= bit(modifier);
+    }
+    return of(bits);
+  }
+
+  static ModifierSet of(Collection<Modifier> modifiers) {
+    if (modifiers instanceof ModifierSet) return (ModifierSet) modifiers;
+    return of(bits(modifiers));
+  }
+
+  private static ModifierSet of(long bits) {
+    return bits == 0L ? EMPTY : new ModifierSet(bits);
+  }
+
+  /** Returns the union of {@code a} and {@code b}, reusing either one if it contains the other. */
+  static ModifierSet union(Collection<Modifier> a, Collection<Modifier> b) {
+    ModifierSet first = of(a);
+    ModifierSet second = of(b);
+    long union = first.bits | second.bits;
+    if (union == first.bits) return first;
+    if (union == second.bits) return second;
+    return new ModifierSet(union);
+  }
+
+  /** Returns a mask with the bit at each modifier's ordinal set. */
+  static long bits(Collection<Modifier> modifiers) {
+    if (modifiers instanceof ModifierSet) return ((ModifierSet) modifiers).bits;
+    long bits = 0L;
+    for (Modifier modifier : modifiers) {
+      bits |= bit(modifier);
+    }
+    return bits;
+  }
+
+  private static long bit(Modifier modifier) {
+    checkNotNull(modifier, "modifier == null");
+    return 1L << modifier.ordinal();
+  }
+
+  /** Returns the keyword for the modifier with {@code ordinal}, like {@code "public"}. */
+  static String keyword(int ordinal) {
+    return KEYWORDS[ordinal];
+  }
+
+  @Override public boolean contains(Object o) {
+    return o instanceof Modifier && (bits & bit((Modifier) o)) != 0L;
+  }
+
+  @Override public boolean containsAll(Collection<?> c) {
+    if (c instanceof ModifierSet) {
+      long other = ((ModifierSet) c).bits;
+      return (bits & other) == other;
+    }
+    return super.containsAll(c);
+  }
+
+  @Override public boolean isEmpty() {
+    return bits == 0L;
+  }
+
+  @Override public int size() {
+    return Long.bitCount(bits);
+  }
+
+  @Override public Iterator<Modifier> iterator() {
+    return new Iterator<Modifier>() {
+      private long remaining = bits;
+
+      @Override public boolean hasNext() {
+        return remaining != 0L;
+      }
+
+      @Override public Modifier next() {
+        if (remaining == 0L) throw new NoSuchElementException();
+        Modifier next = VALUES[Long.numberOfTrailingZeros(remaining)];
+        remaining &= remaining - 1;
+        return next;
+      }
+    };
+  }
+
+  @Override public boolean equals(Object o) {
+    if (o instanceof ModifierSet) return bits == ((ModifierSet) o).bits;
+    return super.equals(o);
+  }
+
+  @Override public int hashCode() {
+    return super.hashCode();
+  }
+}
@@ -38,10 +38,13 @@ public final class ParameterSpec {
   public final TypeName type;
   public final CodeBlock javadoc;
 
+  /** Lazily-initialized toString of this spec. */
+  private String cachedString;
+
   private ParameterSpec(Builder builder) {
     this.name = checkNotNull(builder.name, "name == null");
     this.annotations = Util.immutableList(builder.annotations);
-    this.modifiers = Util.immutableSet(builder.modifiers);
+    this.modifiers = ModifierSet.of(builder.modifiers);
     this.type = checkNotNull(builder.type, "type == null");
     this.javadoc = builder.javadoc.build();
   }
@@ -65,22 +68,40 @@ public final class ParameterSpec {
     if (this == o) return true;
     if (o == null) return false;
     if (getClass() != o.getClass()) return false;
-    return toString().equals(o.toString());
+    ParameterSpec that = (ParameterSpec) o;
+    if (structurallyEquals(that)) return true;
+    return hashCode() == that.hashCode() && toString().equals(that.toString());
   }
 
   @Override public int hashCode() {
     return toString().hashCode();
   }
 
+  /** Returns true if this and {@code that} were built from the same parts. */
+  @SuppressWarnings("ReferenceEquality")
+  boolean structurallyEquals(ParameterSpec that) {
+    if (this == that) return true;
+    return name.equals(that.name)
+        && type.equals(that.type)
+        && modifiers.equals(that.modifiers)
+        && Util.pairwiseEquals(annotations, that.annotations, AnnotationSpec::structurallyEquals)
+        && javadoc.structurallyEquals(that.javadoc);
+  }
+
   @Override public String toString() {
-    StringBuilder out = new StringBuilder();
-    try {
-      CodeWriter codeWriter = new CodeWriter(out);
-      emit(codeWriter, false);
-      return out.toString();
-    } catch (IOException e) {
-      throw new AssertionError();
+    String result = cachedString;
+    if (result == null) {
+      StringBuilder out = new StringBuilder();
+      try {
+        CodeWriter codeWriter = new CodeWriter(out);
+        emit(codeWriter, false);
+      } catch (IOException e) {
+        throw new AssertionError();
+      }
+      result = out.toString();
+      cachedString = result;
     }
+    return result;
   }
 
   public static ParameterSpec get(VariableElement element) {
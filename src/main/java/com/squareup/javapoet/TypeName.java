@@ -17,6 +17,8 @@ package com.squareup.javapoet;
 
 import java.io.IOException;
 import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.GenericDeclaration;
+import java.lang.reflect.Member;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
@@ -26,9 +28,9 @@ import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
-import javax.lang.model.element.TypeParameterElement;
 import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.ErrorType;
@@ -87,6 +89,19 @@ public class TypeName {
   private static final ClassName BOXED_FLOAT = ClassName.get("java.lang", "Float");
   private static final ClassName BOXED_DOUBLE = ClassName.get("java.lang", "Double");
 
+  /**
+   * Conversions of type variables, by the class that declares them or their method or constructor.
+   * Type variables are stable, unlike other reflective types, which methods like {@link
+   * java.lang.reflect.Method#getGenericReturnType} create anew on each call. Values live with their
+   * class, so they don't keep it from being unloaded.
+   */
+  private static final ClassValue<Map<TypeVariable<?>, TypeVariableName>> TYPE_VARIABLE_NAMES =
+      new ClassValue<Map<TypeVariable<?>, TypeVariableName>>() {
+        @Override protected Map<TypeVariable<?>, TypeVariableName> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
   /** The name of this type if it is a keyword, or null. */
   private final String keyword;
   public final List<AnnotationSpec> annotations;
@@ -249,11 +264,11 @@ public class TypeName {
 
   /** Returns a type name equivalent to {@code mirror}. */
   public static TypeName get(TypeMirror mirror) {
-    return get(mirror, new LinkedHashMap<>());
+    return get(mirror, TypeNameCache.uncached());
   }
 
-  static TypeName get(TypeMirror mirror,
-      final Map<TypeParameterElement, TypeVariableName> typeVariables) {
+  /** Converts {@code mirror}, looking up nested mirrors in {@code cache}. */
+  static TypeName get(TypeMirror mirror, final TypeNameCache cache) {
     return mirror.accept(new SimpleTypeVisitor8<TypeName, Void>() {
       @Override public TypeName visitPrimitive(PrimitiveType t, Void p) {
         switch (t.getKind()) {
@@ -279,12 +294,12 @@ public class TypeName {
       }
 
       @Override public TypeName visitDeclared(DeclaredType t, Void p) {
-        ClassName rawType = ClassName.get((TypeElement) t.asElement());
+        ClassName rawType = cache.get((TypeElement) t.asElement());
         TypeMirror enclosingType = t.getEnclosingType();
         TypeName enclosing =
             (enclosingType.getKind() != TypeKind.NONE)
                     && !t.asElement().getModifiers().contains(Modifier.STATIC)
-                ? enclosingType.accept(this, null)
+                ? cache.get(enclosingType)
                 : null;
         if (t.getTypeArguments().isEmpty() && !(enclosing instanceof ParameterizedTypeName)) {
           return rawType;
@@ -292,7 +307,7 @@ public class TypeName {
 
         List<TypeName> typeArgumentNames = new ArrayList<>();
         for (TypeMirror mirror : t.getTypeArguments()) {
-          typeArgumentNames.add(get(mirror, typeVariables));
+          typeArgumentNames.add(cache.get(mirror));
         }
         return enclosing instanceof ParameterizedTypeName
             ? ((ParameterizedTypeName) enclosing).nestedClass(
@@ -305,15 +320,15 @@ public class TypeName {
       }
 
       @Override public ArrayTypeName visitArray(ArrayType t, Void p) {
-        return ArrayTypeName.get(t, typeVariables);
+        return ArrayTypeName.get(t, cache);
       }
 
       @Override public TypeName visitTypeVariable(javax.lang.model.type.TypeVariable t, Void p) {
-        return TypeVariableName.get(t, typeVariables);
+        return TypeVariableName.get(t, cache);
       }
 
       @Override public TypeName visitWildcard(javax.lang.model.type.WildcardType t, Void p) {
-        return WildcardTypeName.get(t, typeVariables);
+        return WildcardTypeName.get(t, cache);
       }
 
       @Override public TypeName visitNoType(NoType t, Void p) {
@@ -329,25 +344,43 @@ public class TypeName {
 
   /** Returns a type name equivalent to {@code type}. */
   public static TypeName get(Type type) {
-    return get(type, new LinkedHashMap<>());
+    if (type instanceof Class<?>) return get((Class<?>) type);
+    Map<Type, TypeVariableName> typeVariables = new LinkedHashMap<>();
+    TypeName result = get(type, typeVariables);
+    // The bounds of the type variables are filled in by now, so later conversions can share them.
+    for (Map.Entry<Type, TypeVariableName> entry : typeVariables.entrySet()) {
+      Map<TypeVariable<?>, TypeVariableName> names =
+          typeVariableNames((TypeVariable<?>) entry.getKey());
+      if (names != null) names.putIfAbsent((TypeVariable<?>) entry.getKey(), entry.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the converted type variables of the class that declares {@code typeVariable}, or null
+   * if it isn't declared by a class, method or constructor.
+   */
+  private static Map<TypeVariable<?>, TypeVariableName> typeVariableNames(
+      TypeVariable<?> typeVariable) {
+    GenericDeclaration declaration = typeVariable.getGenericDeclaration();
+    if (declaration instanceof Class<?>) return TYPE_VARIABLE_NAMES.get((Class<?>) declaration);
+    if (declaration instanceof Member) {
+      return TYPE_VARIABLE_NAMES.get(((Member) declaration).getDeclaringClass());
+    }
+    return null;
   }
 
   static TypeName get(Type type, Map<Type, TypeVariableName> map) {
-    if (type instanceof Class<?>) {
-      Class<?> classType = (Class<?>) type;
-      if (type == void.class) return VOID;
-      if (type == boolean.class) return BOOLEAN;
-      if (type == byte.class) return BYTE;
-      if (type == short.class) return SHORT;
-      if (type == int.class) return INT;
-      if (type == long.class) return LONG;
-      if (type == char.class) return CHAR;
-      if (type == float.class) return FLOAT;
-      if (type == double.class) return DOUBLE;
-      if (classType.isArray()) return ArrayTypeName.of(get(classType.getComponentType(), map));
-      return ClassName.get(classType);
-
-    } else if (type instanceof ParameterizedType) {
+    if (type instanceof Class<?>) return get((Class<?>) type);
+
+    if (type instanceof TypeVariable<?>) {
+      // Only complete conversions are cached, so a hit is safe to share even mid-recursion.
+      Map<TypeVariable<?>, TypeVariableName> names = typeVariableNames((TypeVariable<?>) type);
+      TypeVariableName cached = names != null ? names.get(type) : null;
+      if (cached != null) return cached;
+    }
+
+    if (type instanceof ParameterizedType) {
       return ParameterizedTypeName.get((ParameterizedType) type, map);
 
     } else if (type instanceof WildcardType) {
@@ -364,9 +397,27 @@ public class TypeName {
     }
   }
 
+  private static TypeName get(Class<?> type) {
+    if (type == void.class) return VOID;
+    if (type == boolean.class) return BOOLEAN;
+    if (type == byte.class) return BYTE;
+    if (type == short.class) return SHORT;
+    if (type == int.class) return INT;
+    if (type == long.class) return LONG;
+    if (type == char.class) return CHAR;
+    if (type == float.class) return FLOAT;
+    if (type == double.class) return DOUBLE;
+    if (type.isArray()) return ArrayTypeName.of(get(type.getComponentType()));
+    return ClassName.get(type);
+  }
+
   /** Converts an array of types to a list of type names. */
   static List<TypeName> list(Type[] types) {
-    return list(types, new LinkedHashMap<>());
+    List<TypeName> result = new ArrayList<>(types.length);
+    for (Type type : types) {
+      result.add(get(type));
+    }
+    return result;
   }
 
   static List<TypeName> list(Type[] types, Map<Type, TypeVariableName> map) {
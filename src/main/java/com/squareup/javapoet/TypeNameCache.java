@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+
+import static com.squareup.javapoet.Util.checkNotNull;
+
+/**
+ * Converts type mirrors to type names, remembering each conversion. Nested conversions of type
+ * arguments, bounds and component types are remembered too, so a processor that converts the
+ * same declared types over and over pays for each of them once.
+ *
+ * <p>Mirrors are keyed by their structure rather than by the mirror instances, which javac
+ * compares by identity. A declared type is keyed by its {@link TypeElement}, which is canonical,
+ * and by the names of its enclosing type and type arguments, which are themselves converted through
+ * this cache first. Separately obtained mirrors of {@code List<String>} therefore share one entry.
+ * Type variables are keyed by their {@link TypeParameterElement}. Primitive types convert to
+ * constants and aren't remembered.
+ *
+ * <p>A cache holds on to the elements it has seen. Create one per annotation processing round and
+ * drop it when the round is over; mirrors from different rounds must not be mixed. Instances are
+ * not thread-safe.
+ */
+public final class TypeNameCache {
+  /** Heads of the keys of wildcard types, which have no element. */
+  private static final Object EXTENDS = new Object();
+  private static final Object SUPER = new Object();
+
+  /**
+   * Type variables converted so far, including those whose bounds are still being converted. A
+   * type variable is removed again if converting its bounds fails.
+   */
+  final Map<TypeParameterElement, TypeVariableName> typeVariables = new LinkedHashMap<>();
+  private final Map<Key, TypeName> typeNames;
+  private final Map<TypeElement, ClassName> classNames;
+  private int hitCount;
+  private int missCount;
+
+  public TypeNameCache() {
+    this(true);
+  }
+
+  private TypeNameCache(boolean memoize) {
+    this.typeNames = memoize ? new HashMap<>() : null;
+    this.classNames = memoize ? new HashMap<>() : null;
+  }
+
+  /** Returns a cache that remembers nothing, as used by {@link TypeName#get(TypeMirror)}. */
+  static TypeNameCache uncached() {
+    return new TypeNameCache(false);
+  }
+
+  /** Returns a type name equivalent to {@code mirror}. */
+  public TypeName get(TypeMirror mirror) {
+    checkNotNull(mirror, "mirror == null");
+    if (typeNames == null) return TypeName.get(mirror, this);
+    Key key = key(mirror);
+    if (key == null) return TypeName.get(mirror, this);
+
+    TypeName result = typeNames.get(key);
+    if (result != null) {
+      hitCount++;
+      return result;
+    }
+    missCount++;
+    // Not computeIfAbsent(): the conversion recurses into this cache for nested mirrors.
+    result = TypeName.get(mirror, this);
+    typeNames.put(key, result);
+    return result;
+  }
+
+  /**
+   * Returns the key of {@code mirror}, converting the mirrors it is made of, or null if {@code
+   * mirror} isn't remembered by this cache.
+   */
+  private Key key(TypeMirror mirror) {
+    switch (mirror.getKind()) {
+      case DECLARED:
+      case ERROR:
+        DeclaredType declared = (DeclaredType) mirror;
+        TypeMirror enclosingType = declared.getEnclosingType();
+        boolean hasEnclosing = enclosingType.getKind() != TypeKind.NONE
+            && !declared.asElement().getModifiers().contains(Modifier.STATIC);
+        List<? extends TypeMirror> typeArguments = declared.getTypeArguments();
+        TypeName[] parts = new TypeName[typeArguments.size() + (hasEnclosing ? 1 : 0)];
+        int i = 0;
+        if (hasEnclosing) parts[i++] = get(enclosingType);
+        for (TypeMirror typeArgument : typeArguments) {
+          parts[i++] = get(typeArgument);
+        }
+        return new Key(declared.asElement(), parts);
+      case ARRAY:
+        return new Key(TypeKind.ARRAY, get(((ArrayType) mirror).getComponentType()));
+      case WILDCARD:
+        WildcardType wildcard = (WildcardType) mirror;
+        if (wildcard.getSuperBound() != null) return new Key(SUPER, get(wildcard.getSuperBound()));
+        if (wildcard.getExtendsBound() != null) {
+          return new Key(EXTENDS, get(wildcard.getExtendsBound()));
+        }
+        return new Key(EXTENDS);
+      default:
+        return null;
+    }
+  }
+  /** Returns the class name for {@code element}. */
+  public ClassName get(TypeElement element) {
+    checkNotNull(element, "element == null");
+    if (classNames == null) return ClassName.get(element);
+
+    ClassName result = classNames.get(element);
+    if (result != null) {
+      hitCount++;
+      return result;
+    }
+    missCount++;
+    result = ClassName.get(element);
+    classNames.put(element, result);
+    return result;
+  }
+
+  /** Returns the number of lookups answered from this cache. */
+  public int hitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of lookups that required a conversion. */
+  public int missCount() {
+    return missCount;
+  }
+
+  @Override public String toString() {
+    return "TypeNameCache{hits=" + hitCount + ", misses=" + missCount + "}";
+  }
+
+  /**
+   * Identifies a type by its head, like its element, and by the names of the types it is made of.
+   * Those names come from this cache, which returns one instance per type, so they are compared
+   * by identity.
+   */
+  private static final class Key {
+    private final Object head;
+    private final TypeName[] parts;
+
+    Key(Object head, TypeName... parts) {
+      this.head = head;
+      this.parts = parts;
+    }
+
+    @SuppressWarnings("ReferenceEquality")
+    @Override public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key that = (Key) o;
+      if (!head.equals(that.head) || parts.length != that.parts.length) return false;
+      for (int i = 0; i < parts.length; i++) {
+        if (parts[i] != that.parts[i]) return false;
+      }
+      return true;
+    }
+
+    @Override public int hashCode() {
+      int result = head.hashCode();
+      for (TypeName part : parts) {
+        result = 31 * result + System.identityHashCode(part);
+      }
+      return result;
+    }
+  }
+}
@@ -29,6 +29,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
@@ -39,6 +40,7 @@ import javax.lang.model.type.NoType;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.ElementFilter;
 
+import static com.squareup.javapoet.ModifierSet.union;
 import static com.squareup.javapoet.Util.checkArgument;
 import static com.squareup.javapoet.Util.checkNotNull;
 import static com.squareup.javapoet.Util.checkState;
@@ -65,13 +67,16 @@ public final class TypeSpec {
   public final List<Element> originatingElements;
   public final Set<String> alwaysQualifiedNames;
 
+  /** Lazily-initialized toString of this spec. */
+  private String cachedString;
+
   private TypeSpec(Builder builder) {
     this.kind = builder.kind;
     this.name = builder.name;
     this.anonymousTypeArguments = builder.anonymousTypeArguments;
     this.javadoc = builder.javadoc.build();
     this.annotations = Util.immutableList(builder.annotations);
-    this.modifiers = Util.immutableSet(builder.modifiers);
+    this.modifiers = ModifierSet.of(builder.modifiers);
     this.typeVariables = Util.immutableList(builder.typeVariables);
     this.superclass = builder.superclass;
     this.superinterfaces = Util.immutableList(builder.superinterfaces);
@@ -105,7 +110,7 @@ public final class TypeSpec {
     this.anonymousTypeArguments = null;
     this.javadoc = type.javadoc;
     this.annotations = Collections.emptyList();
-    this.modifiers = Collections.emptySet();
+    this.modifiers = ModifierSet.EMPTY;
     this.typeVariables = Collections.emptyList();
     this.superclass = null;
     this.superinterfaces = Collections.emptyList();
@@ -195,7 +200,7 @@ public final class TypeSpec {
         codeWriter.emitJavadoc(javadoc);
         codeWriter.emitAnnotations(annotations, false);
         codeWriter.emit("$L", enumName);
-        if (!anonymousTypeArguments.formatParts.isEmpty()) {
+        if (!anonymousTypeArguments.isEmpty()) {
           codeWriter.emit("(");
           codeWriter.emit(anonymousTypeArguments);
           codeWriter.emit(")");
@@ -215,7 +220,7 @@ public final class TypeSpec {
 
         codeWriter.emitJavadoc(javadoc);
         codeWriter.emitAnnotations(annotations, false);
-        codeWriter.emitModifiers(modifiers, Util.union(implicitModifiers, kind.asMemberModifiers));
+        codeWriter.emitModifiers(modifiers, union(implicitModifiers, kind.asMemberModifiers));
         if (kind == Kind.ANNOTATION) {
           codeWriter.emit("$L $L", "@interface", name);
         } else {
@@ -269,7 +274,7 @@ public final class TypeSpec {
           i.hasNext(); ) {
         Map.Entry<String, TypeSpec> enumConstant = i.next();
         if (!firstMember) codeWriter.emit("\n");
-        enumConstant.getValue().emit(codeWriter, enumConstant.getKey(), Collections.emptySet());
+        enumConstant.getValue().emit(codeWriter, enumConstant.getKey(), ModifierSet.EMPTY);
         firstMember = false;
         if (i.hasNext()) {
           codeWriter.emit(",\n");
@@ -349,48 +354,78 @@ public final class TypeSpec {
     if (this == o) return true;
     if (o == null) return false;
     if (getClass() != o.getClass()) return false;
-    return toString().equals(o.toString());
+    TypeSpec that = (TypeSpec) o;
+    if (structurallyEquals(that)) return true;
+    return hashCode() == that.hashCode() && toString().equals(that.toString());
   }
 
   @Override public int hashCode() {
     return toString().hashCode();
   }
 
+  /** Returns true if this and {@code that} were built from the same parts. */
+  @SuppressWarnings("ReferenceEquality")
+  boolean structurallyEquals(TypeSpec that) {
+    if (this == that) return true;
+    return kind == that.kind
+        && Objects.equals(name, that.name)
+        && Objects.equals(superclass, that.superclass)
+        && modifiers.equals(that.modifiers)
+        && superinterfaces.equals(that.superinterfaces)
+        && alwaysQualifiedNames.equals(that.alwaysQualifiedNames)
+        && TypeVariableName.declarationsEqual(typeVariables, that.typeVariables)
+        && Util.nullSafeEquals(anonymousTypeArguments, that.anonymousTypeArguments,
+            CodeBlock::structurallyEquals)
+        && Util.pairwiseEquals(annotations, that.annotations, AnnotationSpec::structurallyEquals)
+        && javadoc.structurallyEquals(that.javadoc)
+        && Util.entriesEqual(enumConstants, that.enumConstants, TypeSpec::structurallyEquals)
+        && Util.pairwiseEquals(fieldSpecs, that.fieldSpecs, FieldSpec::structurallyEquals)
+        && staticBlock.structurallyEquals(that.staticBlock)
+        && initializerBlock.structurallyEquals(that.initializerBlock)
+        && Util.pairwiseEquals(methodSpecs, that.methodSpecs, MethodSpec::structurallyEquals)
+        && Util.pairwiseEquals(typeSpecs, that.typeSpecs, TypeSpec::structurallyEquals);
+  }
+
   @Override public String toString() {
-    StringBuilder out = new StringBuilder();
-    try {
-      CodeWriter codeWriter = new CodeWriter(out);
-      emit(codeWriter, null, Collections.emptySet());
-      return out.toString();
-    } catch (IOException e) {
-      throw new AssertionError();
-    }
+    String result = cachedString;
+    if (result == null) {
+      StringBuilder out = new StringBuilder();
+      try {
+        CodeWriter codeWriter = new CodeWriter(out);
+        emit(codeWriter, null, Collections.emptySet());
+      } catch (IOException e) {
+        throw new AssertionError();
+      }
+      result = out.toString();
+      cachedString = result;
+    }
+    return result;
   }
 
   public enum Kind {
     CLASS(
-        Collections.emptySet(),
-        Collections.emptySet(),
-        Collections.emptySet(),
-        Collections.emptySet()),
+        ModifierSet.EMPTY,
+        ModifierSet.EMPTY,
+        ModifierSet.EMPTY,
+        ModifierSet.EMPTY),
 
     INTERFACE(
-        Util.immutableSet(Arrays.asList(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)),
-        Util.immutableSet(Arrays.asList(Modifier.PUBLIC, Modifier.ABSTRACT)),
-        Util.immutableSet(Arrays.asList(Modifier.PUBLIC, Modifier.STATIC)),
-        Util.immutableSet(Collections.singletonList(Modifier.STATIC))),
+        ModifierSet.of(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL),
+        ModifierSet.of(Modifier.PUBLIC, Modifier.ABSTRACT),
+        ModifierSet.of(Modifier.PUBLIC, Modifier.STATIC),
+        ModifierSet.of(Modifier.STATIC)),
 
     ENUM(
-        Collections.emptySet(),
-        Collections.emptySet(),
-        Collections.emptySet(),
-        Collections.singleton(Modifier.STATIC)),
+        ModifierSet.EMPTY,
+        ModifierSet.EMPTY,
+        ModifierSet.EMPTY,
+        ModifierSet.of(Modifier.STATIC)),
 
     ANNOTATION(
-        Util.immutableSet(Arrays.asList(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)),
-        Util.immutableSet(Arrays.asList(Modifier.PUBLIC, Modifier.ABSTRACT)),
-        Util.immutableSet(Arrays.asList(Modifier.PUBLIC, Modifier.STATIC)),
-        Util.immutableSet(Collections.singletonList(Modifier.STATIC)));
+        ModifierSet.of(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL),
+        ModifierSet.of(Modifier.PUBLIC, Modifier.ABSTRACT),
+        ModifierSet.of(Modifier.PUBLIC, Modifier.STATIC),
+        ModifierSet.of(Modifier.STATIC));
 
     private final Set<Modifier> implicitFieldModifiers;
     private final Set<Modifier> implicitMethodModifiers;
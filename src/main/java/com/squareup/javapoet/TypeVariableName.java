@@ -20,7 +20,6 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -79,6 +78,14 @@ public final class TypeVariableName extends TypeName {
     return new TypeVariableName(name, Collections.unmodifiableList(boundsNoObject));
   }
 
+  /**
+   * Returns true if {@code a} and {@code b} declare the same type variables. Unlike {@link #equals}
+   * this also compares bounds, which are emitted where type variables are declared.
+   */
+  static boolean declarationsEqual(List<TypeVariableName> a, List<TypeVariableName> b) {
+    return Util.pairwiseEquals(a, b, (x, y) -> x.equals(y) && x.bounds.equals(y.bounds));
+  }
+
   @Override CodeWriter emit(CodeWriter out) throws IOException {
     emitAnnotations(out);
     return out.emitAndIndent(name);
@@ -112,8 +119,8 @@ public final class TypeVariableName extends TypeName {
    * constructing the bounds, we can just return it from the map. And, the code that put the entry
    * in {@code variables} will make sure that the bounds are filled in before returning.
    */
-  static TypeVariableName get(
-      TypeVariable mirror, Map<TypeParameterElement, TypeVariableName> typeVariables) {
+  static TypeVariableName get(TypeVariable mirror, TypeNameCache cache) {
+    Map<TypeParameterElement, TypeVariableName> typeVariables = cache.typeVariables;
     TypeParameterElement element = (TypeParameterElement) mirror.asElement();
     TypeVariableName typeVariableName = typeVariables.get(element);
     if (typeVariableName == null) {
@@ -123,10 +130,17 @@ public final class TypeVariableName extends TypeName {
       List<TypeName> visibleBounds = Collections.unmodifiableList(bounds);
       typeVariableName = new TypeVariableName(element.getSimpleName().toString(), visibleBounds);
       typeVariables.put(element, typeVariableName);
-      for (TypeMirror typeMirror : element.getBounds()) {
-        bounds.add(TypeName.get(typeMirror, typeVariables));
+      boolean converted = false;
+      try {
+        for (TypeMirror typeMirror : element.getBounds()) {
+          bounds.add(cache.get(typeMirror));
+        }
+        bounds.remove(OBJECT);
+        converted = true;
+      } finally {
+        // Don't leave a type variable with missing bounds for later conversions to find.
+        if (!converted) typeVariables.remove(element);
       }
-      bounds.remove(OBJECT);
     }
     return typeVariableName;
   }
@@ -146,7 +160,7 @@ public final class TypeVariableName extends TypeName {
 
   /** Returns type variable equivalent to {@code type}. */
   public static TypeVariableName get(java.lang.reflect.TypeVariable<?> type) {
-    return get(type, new LinkedHashMap<>());
+    return (TypeVariableName) TypeName.get(type);
   }
 
   /** @see #get(java.lang.reflect.TypeVariable, Map) */
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Encodes appended characters as UTF-8 into a growable byte array. {@link LineWrapper} emits many
+ * short strings, and encoding them here is much cheaper than passing each through a {@link
+ * java.io.OutputStreamWriter}. The encoded bytes are then written to a stream with a single call.
+ *
+ * <p>Like {@link String#getBytes}, this encodes unpaired surrogates as {@code '?'}.
+ */
+final class Utf8Buffer implements Appendable {
+  private byte[] bytes;
+  private int size;
+
+  /** A high surrogate that is waiting for its low surrogate, or 0. */
+  private char pendingHighSurrogate;
+
+  Utf8Buffer() {
+    this(8192);
+  }
+
+  Utf8Buffer(int initialCapacity) {
+    this.bytes = new byte[initialCapacity];
+  }
+
+  @Override public Utf8Buffer append(CharSequence csq) {
+    if (csq == null) csq = "null";
+    return append(csq, 0, csq.length());
+  }
+
+  @Override public Utf8Buffer append(CharSequence csq, int start, int end) {
+    if (csq == null) csq = "null";
+    int i = start;
+    if (pendingHighSurrogate == 0) {
+      // Fast path: copy ASCII characters until the first that isn't.
+      ensureCapacity(end - start);
+      byte[] bytes = this.bytes;
+      int size = this.size;
+      for (; i < end; i++) {
+        char c = csq.charAt(i);
+        if (c >= 0x80) break;
+        bytes[size++] = (byte) c;
+      }
+      this.size = size;
+    }
+    for (; i < end; i++) {
+      encode(csq.charAt(i));
+    }
+    return this;
+  }
+
+  @Override public Utf8Buffer append(char c) {
+    encode(c);
+    return this;
+  }
+
+  private void encode(char c) {
+    if (pendingHighSurrogate != 0) {
+      char high = pendingHighSurrogate;
+      pendingHighSurrogate = 0;
+      if (Character.isLowSurrogate(c)) {
+        int codePoint = Character.toCodePoint(high, c);
+        ensureCapacity(4);
+        bytes[size++] = (byte) (0xf0 | (codePoint >> 18));
+        bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        bytes[size++] = (byte) (0x80 | (codePoint & 0x3f));
+        return;
+      }
+      encodeReplacement();
+    }
+
+    if (c < 0x80) {
+      ensureCapacity(1);
+      bytes[size++] = (byte) c;
+    } else if (c < 0x800) {
+      ensureCapacity(2);
+      bytes[size++] = (byte) (0xc0 | (c >> 6));
+      bytes[size++] = (byte) (0x80 | (c & 0x3f));
+    } else if (Character.isHighSurrogate(c)) {
+      pendingHighSurrogate = c;
+    } else if (Character.isLowSurrogate(c)) {
+      encodeReplacement();
+    } else {
+      ensureCapacity(3);
+      bytes[size++] = (byte) (0xe0 | (c >> 12));
+      bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+      bytes[size++] = (byte) (0x80 | (c & 0x3f));
+    }
+  }
+
+  private void encodeReplacement() {
+    ensureCapacity(1);
+    bytes[size++] = '?';
+  }
+
+  private void ensureCapacity(int additional) {
+    int required = size + additional;
+    if (required > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length * 2));
+    }
+  }
+
+  /** Encodes a trailing high surrogate, which won't be followed by its low surrogate. */
+  private void finish() {
+    if (pendingHighSurrogate != 0) {
+      pendingHighSurrogate = 0;
+      encodeReplacement();
+    }
+  }
+
+  /** Returns the number of encoded bytes. */
+  int size() {
+    finish();
+    return size;
+  }
+
+  /** Returns the encoded bytes, in the first {@link #size()} bytes of the returned array. */
+  byte[] bytes() {
+    finish();
+    return bytes;
+  }
+
+  void writeTo(OutputStream out) throws IOException {
+    finish();
+    out.write(bytes, 0, size);
+  }
+}
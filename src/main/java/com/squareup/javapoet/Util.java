@@ -15,15 +15,23 @@
  */
 package com.squareup.javapoet;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.function.BiPredicate;
 import javax.lang.model.element.Modifier;
 
 import static java.lang.Character.isISOControl;
@@ -37,16 +45,65 @@ final class Util {
   }
 
   static <K, V> Map<K, List<V>> immutableMultimap(Map<K, List<V>> multimap) {
+    if (multimap instanceof ImmutableMap && hasImmutableValues(multimap)) return multimap;
     LinkedHashMap<K, List<V>> result = new LinkedHashMap<>();
     for (Map.Entry<K, List<V>> entry : multimap.entrySet()) {
       if (entry.getValue().isEmpty()) continue;
       result.put(entry.getKey(), immutableList(entry.getValue()));
     }
-    return Collections.unmodifiableMap(result);
+    return immutableMap(result);
   }
 
+  private static <K, V> boolean hasImmutableValues(Map<K, List<V>> multimap) {
+    for (List<V> values : multimap.values()) {
+      if (!(values instanceof ImmutableList) || values.isEmpty()) return false;
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
   static <K, V> Map<K, V> immutableMap(Map<K, V> map) {
-    return Collections.unmodifiableMap(new LinkedHashMap<>(map));
+    if (map instanceof ImmutableMap) return map;
+    switch (map.size()) {
+      case 0:
+        return (Map<K, V>) ImmutableMap.EMPTY;
+      case 1:
+        Map.Entry<K, V> entry = map.entrySet().iterator().next();
+        return new ImmutableMap<>(Collections.singletonMap(entry.getKey(), entry.getValue()));
+      default:
+        return new ImmutableMap<>(Collections.unmodifiableMap(new LinkedHashMap<>(map)));
+    }
+  }
+
+  /** Returns true if {@code a} and {@code b} have equal elements according to {@code equality}. */
+  static <T> boolean pairwiseEquals(
+      List<T> a, List<T> b, BiPredicate<? super T, ? super T> equality) {
+    if (a.size() != b.size()) return false;
+    for (int i = 0, size = a.size(); i < size; i++) {
+      if (!equality.test(a.get(i), b.get(i))) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if {@code a} and {@code b} have equal keys in the same iteration order, and their
+   * values are equal according to {@code equality}.
+   */
+  static <K, V> boolean entriesEqual(
+      Map<K, V> a, Map<K, V> b, BiPredicate<? super V, ? super V> equality) {
+    if (a.size() != b.size()) return false;
+    Iterator<Map.Entry<K, V>> i = b.entrySet().iterator();
+    for (Map.Entry<K, V> entry : a.entrySet()) {
+      Map.Entry<K, V> other = i.next();
+      if (!entry.getKey().equals(other.getKey())) return false;
+      if (!equality.test(entry.getValue(), other.getValue())) return false;
+    }
+    return true;
+  }
+
+  /** Returns true if {@code a} and {@code b} are null or equal according to {@code equality}. */
+  static <T> boolean nullSafeEquals(T a, T b, BiPredicate<? super T, ? super T> equality) {
+    return a == b || (a != null && b != null && equality.test(a, b));
   }
 
   static void checkArgument(boolean condition, String format, Object... args) {
@@ -62,19 +119,21 @@ final class Util {
     if (!condition) throw new IllegalStateException(String.format(format, args));
   }
 
+  @SuppressWarnings("unchecked")
   static <T> List<T> immutableList(Collection<T> collection) {
-    return Collections.unmodifiableList(new ArrayList<>(collection));
+    if (collection instanceof ImmutableList) return (List<T>) collection;
+    if (collection.isEmpty()) return (List<T>) ImmutableList.EMPTY;
+    return new ImmutableList<>(collection.toArray());
   }
 
+  @SuppressWarnings("unchecked")
   static <T> Set<T> immutableSet(Collection<T> set) {
-    return Collections.unmodifiableSet(new LinkedHashSet<>(set));
-  }
-
-  static <T> Set<T> union(Set<T> a, Set<T> b) {
-    Set<T> result = new LinkedHashSet<>();
-    result.addAll(a);
-    result.addAll(b);
-    return result;
+    if (set instanceof ImmutableSet) return (Set<T>) set;
+    if (set.isEmpty()) return (Set<T>) ImmutableSet.EMPTY;
+    Object[] elements = set instanceof Set
+        ? set.toArray()
+        : new LinkedHashSet<>(set).toArray();
+    return new ImmutableSet<>(elements);
   }
 
   static void requireExactlyOneOf(Set<Modifier> modifiers, Modifier... mutuallyExclusive) {
@@ -128,4 +187,110 @@ final class Util {
     result.append('"');
     return result.toString();
   }
+
+  /**
+   * An unmodifiable list backed by an array that nobody else can see. Lists of this type are
+   * returned as-is by {@link #immutableList}, so passing a spec's list to another spec is free.
+   */
+  private static final class ImmutableList<E> extends AbstractList<E> implements RandomAccess {
+    static final ImmutableList<Object> EMPTY = new ImmutableList<>(new Object[0]);
+
+    private final Object[] elements;
+
+    ImmutableList(Object[] elements) {
+      this.elements = elements;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public E get(int index) {
+      return (E) elements[index];
+    }
+
+    @Override public int size() {
+      return elements.length;
+    }
+
+    @Override public Object[] toArray() {
+      return Arrays.copyOf(elements, elements.length, Object[].class);
+    }
+  }
+
+  /**
+   * An unmodifiable set that iterates in insertion order. Small sets, like most modifier sets, are
+   * searched linearly; larger ones build a hash index.
+   */
+  private static final class ImmutableSet<E> extends AbstractSet<E> {
+    static final ImmutableSet<Object> EMPTY = new ImmutableSet<>(new Object[0]);
+    private static final int LINEAR_SEARCH_LIMIT = 8;
+
+    private final Object[] elements;
+    private final Set<Object> index;
+
+    ImmutableSet(Object[] elements) {
+      this.elements = elements;
+      this.index = elements.length > LINEAR_SEARCH_LIMIT
+          ? new HashSet<>(Arrays.asList(elements))
+          : null;
+    }
+
+    @Override public boolean contains(Object o) {
+      if (index != null) return index.contains(o);
+      for (Object element : elements) {
+        if (Objects.equals(element, o)) return true;
+      }
+      return false;
+    }
+
+    @Override public Iterator<E> iterator() {
+      return new Iterator<E>() {
+        private int next;
+
+        @Override public boolean hasNext() {
+          return next < elements.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override public E next() {
+          if (next == elements.length) throw new NoSuchElementException();
+          return (E) elements[next++];
+        }
+      };
+    }
+
+    @Override public int size() {
+      return elements.length;
+    }
+
+    @Override public Object[] toArray() {
+      return Arrays.copyOf(elements, elements.length, Object[].class);
+    }
+  }
+
+  /** An unmodifiable map that {@link #immutableMap} recognizes and returns as-is. */
+  private static final class ImmutableMap<K, V> extends AbstractMap<K, V> {
+    static final ImmutableMap<Object, Object> EMPTY = new ImmutableMap<>(Collections.emptyMap());
+
+    private final Map<K, V> delegate;
+
+    /** {@code delegate} must be unmodifiable and not reachable from elsewhere. */
+    ImmutableMap(Map<K, V> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override public V get(Object key) {
+      return delegate.get(key);
+    }
+
+    @Override public boolean containsKey(Object key) {
+      return delegate.containsKey(key);
+    }
+
+    @Override public int size() {
+      return delegate.size();
+    }
+
+    @Override public Set<Entry<K, V>> entrySet() {
+      return delegate.entrySet();
+    }
+  }
 }
@@ -20,10 +20,8 @@ import java.lang.reflect.Type;
 import java.lang.reflect.WildcardType;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import javax.lang.model.element.TypeParameterElement;
 import javax.lang.model.type.TypeMirror;
 
 import static com.squareup.javapoet.Util.checkArgument;
@@ -98,27 +96,25 @@ public final class WildcardTypeName extends TypeName {
   }
 
   public static TypeName get(javax.lang.model.type.WildcardType mirror) {
-    return get(mirror, new LinkedHashMap<>());
+    return get(mirror, TypeNameCache.uncached());
   }
 
-  static TypeName get(
-      javax.lang.model.type.WildcardType mirror,
-      Map<TypeParameterElement, TypeVariableName> typeVariables) {
+  static TypeName get(javax.lang.model.type.WildcardType mirror, TypeNameCache cache) {
     TypeMirror extendsBound = mirror.getExtendsBound();
     if (extendsBound == null) {
       TypeMirror superBound = mirror.getSuperBound();
       if (superBound == null) {
         return subtypeOf(Object.class);
       } else {
-        return supertypeOf(TypeName.get(superBound, typeVariables));
+        return supertypeOf(cache.get(superBound));
       }
     } else {
-      return subtypeOf(TypeName.get(extendsBound, typeVariables));
+      return subtypeOf(cache.get(extendsBound));
     }
   }
 
   public static TypeName get(WildcardType wildcardName) {
-    return get(wildcardName, new LinkedHashMap<>());
+    return TypeName.get(wildcardName);
   }
 
   static TypeName get(WildcardType wildcardName, Map<Type, TypeVariableName> map) {
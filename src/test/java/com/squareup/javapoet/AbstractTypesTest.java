@@ -27,6 +27,7 @@ import java.io.Serializable;
 import java.lang.annotation.Annotation;
 import java.nio.charset.Charset;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -48,6 +49,7 @@ import javax.lang.model.util.Types;
 import javax.tools.JavaFileObject;
 
 import org.junit.Test;
+import org.mockito.Mockito;
 
 public abstract class AbstractTypesTest {
   protected abstract Elements getElements();
@@ -166,6 +168,96 @@ public abstract class AbstractTypesTest {
         .isEqualTo("[java.util.Map<java.util.List<T>, java.util.Set<T[]>>]");
   }
 
+  @Test public void typeNameCacheConvertsLikeTypeName() {
+    TypeNameCache cache = new TypeNameCache();
+    TypeMirror recursive = getElement(Recursive.class).asType();
+    TypeMirror array = getTypes().getArrayType(getMirror(Object.class));
+    TypeMirror wildcard = getTypes().getWildcardType(getMirror(Number.class), null);
+    TypeMirror primitive = getTypes().getPrimitiveType(TypeKind.INT);
+
+    assertThat(cache.get(recursive)).isEqualTo(TypeName.get(recursive));
+    assertThat(cache.get(array)).isEqualTo(TypeName.get(array));
+    assertThat(cache.get(wildcard)).isEqualTo(TypeName.get(wildcard));
+    assertThat(cache.get(primitive)).isEqualTo(TypeName.get(primitive));
+    assertThat(cache.get(getElement(Map.Entry.class))).isEqualTo(ClassName.get(Map.Entry.class));
+
+    TypeVariableName typeVariable =
+        (TypeVariableName) ((ParameterizedTypeName) cache.get(recursive)).typeArguments.get(0);
+    assertThat(typeVariable.bounds.toString())
+        .isEqualTo("[java.util.Map<java.util.List<T>, java.util.Set<T[]>>]");
+  }
+
+  @Test public void typeNameCacheReusesConversions() {
+    TypeNameCache cache = new TypeNameCache();
+    TypeMirror string = getMirror(String.class);
+    DeclaredType listOfString = getTypes().getDeclaredType(getElement(List.class), string);
+    DeclaredType setOfString = getTypes().getDeclaredType(getElement(Set.class), string);
+
+    ParameterizedTypeName list = (ParameterizedTypeName) cache.get(listOfString);
+    int misses = cache.missCount();
+    int hits = cache.hitCount();
+
+    assertThat(cache.get(listOfString)).isSameInstanceAs(list);
+    assertThat(cache.hitCount()).isGreaterThan(hits);
+    assertThat(cache.missCount()).isEqualTo(misses);
+
+    // A separately obtained mirror of the same type shares the entry.
+    DeclaredType otherListOfString =
+        getTypes().getDeclaredType(getElement(List.class), getMirror(String.class));
+    assertThat(otherListOfString).isNotSameInstanceAs(listOfString);
+    assertThat(cache.get(otherListOfString)).isSameInstanceAs(list);
+    assertThat(cache.missCount()).isEqualTo(misses);
+
+    // The nested String was converted while converting List<String>.
+    ParameterizedTypeName set = (ParameterizedTypeName) cache.get(setOfString);
+    assertThat(set.typeArguments.get(0)).isSameInstanceAs(list.typeArguments.get(0));
+    assertThat(cache.get(getElement(String.class))).isSameInstanceAs(list.typeArguments.get(0));
+  }
+
+  static class RepeatedTypes {
+    List<String> first;
+    List<String> second;
+    Map<String, List<String>> third;
+    List<String>[] fourth;
+  }
+
+  @Test public void typeNameCacheMatchesEqualTypesFromDeclarations() {
+    TypeNameCache cache = new TypeNameCache();
+    Map<String, TypeMirror> fieldTypes = new LinkedHashMap<>();
+    for (VariableElement field : fieldsIn(getElement(RepeatedTypes.class).getEnclosedElements())) {
+      fieldTypes.put(field.getSimpleName().toString(), field.asType());
+    }
+    TypeName first = cache.get(fieldTypes.get("first"));
+    TypeName second = cache.get(fieldTypes.get("second"));
+    ParameterizedTypeName third = (ParameterizedTypeName) cache.get(fieldTypes.get("third"));
+    ArrayTypeName fourth = (ArrayTypeName) cache.get(fieldTypes.get("fourth"));
+
+    assertThat(second).isSameInstanceAs(first);
+    assertThat(third.typeArguments.get(1)).isSameInstanceAs(first);
+    assertThat(fourth.componentType).isSameInstanceAs(first);
+    // Only the classes String, List and Map, and the types String, List<String>,
+    // Map<String, List<String>> and List<String>[] were converted.
+    assertThat(cache.missCount()).isEqualTo(7);
+  }
+
+  @Test public void typeNameCacheForgetsTypeVariablesThatFailToConvert() {
+    TypeNameCache cache = new TypeNameCache();
+    TypeParameterElement element = Mockito.mock(TypeParameterElement.class);
+    Mockito.doReturn(getElements().getName("T")).when(element).getSimpleName();
+    TypeMirror packageType = getElements().getPackageElement("java.util").asType();
+    Mockito.doReturn(Collections.singletonList(packageType)).when(element).getBounds();
+    javax.lang.model.type.TypeVariable typeVariable =
+        Mockito.mock(javax.lang.model.type.TypeVariable.class);
+    Mockito.doReturn(element).when(typeVariable).asElement();
+
+    try {
+      TypeVariableName.get(typeVariable, cache);
+      fail();
+    } catch (RuntimeException expected) {
+    }
+    assertThat(cache.typeVariables).isEmpty();
+  }
+
   @Test public void getPrimitiveTypeMirror() {
     assertThat(TypeName.get(getTypes().getPrimitiveType(TypeKind.BOOLEAN)))
         .isEqualTo(TypeName.BOOLEAN);
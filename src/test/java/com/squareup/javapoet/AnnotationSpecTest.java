@@ -353,6 +353,15 @@ public final class AnnotationSpecTest {
         + "}\n");
   }
 
+  @Test public void reflectAnnotationIsMemoized() {
+    HasDefaultsAnnotation annotation = IsAnnotated.class.getAnnotation(HasDefaultsAnnotation.class);
+    AnnotationSpec spec = AnnotationSpec.get(annotation);
+    assertThat(AnnotationSpec.get(annotation)).isSameInstanceAs(spec);
+    assertThat(AnnotationSpec.get(annotation, true)).isNotEqualTo(spec);
+    assertThat(AnnotationSpec.get(annotation, true))
+        .isSameInstanceAs(AnnotationSpec.get(annotation, true));
+  }
+
   @Test public void disallowsNullMemberName() {
     AnnotationSpec.Builder builder = AnnotationSpec.builder(HasDefaultsAnnotation.class);
     try {
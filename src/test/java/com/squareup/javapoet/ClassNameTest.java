@@ -203,4 +203,58 @@ public final class ClassNameTest {
     assertEquals("Foo.Bar.Baz", ClassName.get("", "Foo", "Bar", "Baz").canonicalName());
     assertEquals("a.b.c.Foo.Bar.Baz", ClassName.get("a.b.c", "Foo", "Bar", "Baz").canonicalName());
   }
+
+  @Test public void internPool() {
+    ClassName.setInternPoolSize(100);
+    try {
+      ClassName entry = ClassName.get("java.util", "Map", "Entry");
+      assertThat(ClassName.get("java.util", "Map", "Entry")).isSameInstanceAs(entry);
+      assertThat(ClassName.bestGuess("java.util.Map.Entry")).isSameInstanceAs(entry);
+      Elements elements = compilationRule.getElements();
+      TypeElement element = elements.getTypeElement(Map.Entry.class.getCanonicalName());
+      assertThat(ClassName.get(element)).isSameInstanceAs(entry);
+
+      // Names that share a canonical name but not a structure aren't confused.
+      ClassName nested = ClassName.get("a", "B", "C");
+      ClassName topLevel = ClassName.get("a.B", "C");
+      assertThat(topLevel.packageName()).isEqualTo("a.B");
+      assertThat(ClassName.get("a", "B", "C")).isSameInstanceAs(nested);
+      assertThat(ClassName.bestGuess("a.B.C").packageName()).isEqualTo("a");
+
+      // Names whose canonical names have the same hash code aren't confused.
+      assertThat("a.Aa".hashCode()).isEqualTo("a.BB".hashCode());
+      ClassName aa = ClassName.get("a", "Aa");
+      assertThat(ClassName.get("a", "BB").simpleName()).isEqualTo("BB");
+      assertThat(ClassName.bestGuess("a.BB").simpleName()).isEqualTo("BB");
+      assertThat(ClassName.get("a", "Aa")).isSameInstanceAs(aa);
+      try {
+        ClassName.get(null, "Foo");
+        fail();
+      } catch (NullPointerException expected) {
+        assertThat(expected).hasMessageThat().isEqualTo("packageName == null");
+      }
+      try {
+        ClassName.get("com.example", "Foo", "bar");
+        ClassName.bestGuess("com.example.Foo.bar");
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    } finally {
+      ClassName.setInternPoolSize(0);
+    }
+    assertThat(ClassName.get("java.util", "Map", "Entry"))
+        .isNotSameInstanceAs(ClassName.get("java.util", "Map", "Entry"));
+  }
+
+  @Test public void internPoolIsBounded() {
+    ClassName.setInternPoolSize(1);
+    try {
+      ClassName a = ClassName.get("a", "A");
+      assertThat(ClassName.get("a", "A")).isSameInstanceAs(a);
+      ClassName.get("b", "B");
+      assertThat(ClassName.get("a", "A")).isNotSameInstanceAs(a);
+    } finally {
+      ClassName.setInternPoolSize(0);
+    }
+  }
 }
@@ -16,9 +16,12 @@
 package com.squareup.javapoet;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
 import org.junit.Test;
 
 import static com.google.common.truth.Truth.assertThat;
@@ -38,6 +41,27 @@ public final class CodeBlockTest {
     assertThat(a.hashCode()).isEqualTo(b.hashCode());
   }
 
+  @Test public void equalsWhenRenderedIdentically() {
+    CodeBlock a = CodeBlock.of("$T x;", TypeName.INT);
+    CodeBlock b = CodeBlock.of("$L x;", "int");
+    assertThat(a.structurallyEquals(b)).isFalse();
+    assertThat(a.equals(b)).isTrue();
+    assertThat(a.hashCode()).isEqualTo(b.hashCode());
+    CodeBlock c = CodeBlock.of("$T x;", TypeName.LONG);
+    assertThat(a.equals(c)).isFalse();
+  }
+
+  @Test public void structurallyEqualsComparesNestedSpecs() {
+    TypeSpec taco = TypeSpec.anonymousClassBuilder("").addSuperinterface(Runnable.class).build();
+    CodeBlock a = CodeBlock.of("$L", taco);
+    CodeBlock b = CodeBlock.of("$L", taco.toBuilder().build());
+    assertThat(a.structurallyEquals(b)).isTrue();
+    MethodSpec run = MethodSpec.methodBuilder("run").build();
+    CodeBlock c = CodeBlock.of("$L", taco.toBuilder().addMethod(run).build());
+    assertThat(a.structurallyEquals(c)).isFalse();
+    assertThat(a.equals(c)).isFalse();
+  }
+
   @Test public void of() {
     CodeBlock a = CodeBlock.of("$L taco", "delicious");
     assertThat(a.toString()).isEqualTo("delicious taco");
@@ -190,6 +214,29 @@ public final class CodeBlockTest {
     assertThat(block.toString()).isEqualTo("java.lang.Integer\n");
   }
 
+  @Test public void namedArgumentsFromLargeMap() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    for (int i = 0; i < 20; i++) {
+      map.put("taco" + i, i);
+    }
+    CodeBlock block = CodeBlock.builder().addNamed("$taco1:L + $taco12:L", map).build();
+    assertThat(block.toString()).isEqualTo("1 + 12");
+    try {
+      CodeBlock.builder().addNamed("$taco20:L", map).build();
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("Missing named argument for $taco20");
+    }
+  }
+
+  @Test public void namedArgumentNamesArePrefixFree() {
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("taco", "a");
+    map.put("tacos", "b");
+    CodeBlock block = CodeBlock.builder().addNamed("$tacos:L$taco:L $$: $taco:L", map).build();
+    assertThat(block.toString()).isEqualTo("ba $: a");
+  }
+
   @Test public void danglingNamed() {
     Map<String, Object> map = new LinkedHashMap<>();
     map.put("clazz", Integer.class);
@@ -201,6 +248,44 @@ public final class CodeBlockTest {
     }
   }
 
+  @Test public void missingNamedArgumentBeforeInvalidType() {
+    try {
+      CodeBlock.builder().addNamed("$foo:X", new LinkedHashMap<>());
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("Missing named argument for $foo");
+    }
+  }
+
+  @Test public void failedAddsLeaveBuilderUnchanged() {
+    CodeBlock.Builder builder = CodeBlock.builder().add("$L", "before");
+    try {
+      builder.add(" $L $T", "taco", "salsa");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("expected type but was salsa");
+    }
+    try {
+      builder.addStatement("$L $T", "taco", "salsa");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("expected type but was salsa");
+    }
+    try {
+      builder.addNamed(" $text:L $type:T", Collections.singletonMap("text", "taco"));
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("Missing named argument for $type");
+    }
+    try {
+      builder.add(CodeBlock.template(" $L $T"), "taco", "salsa");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("expected type but was salsa");
+    }
+    assertThat(builder.add(" $L", "after").build().toString()).isEqualTo("before after");
+  }
+
   @Test public void indexTooHigh() {
     try {
       CodeBlock.builder().add("$2T", String.class).build();
@@ -219,6 +304,43 @@ public final class CodeBlockTest {
     }
   }
 
+  @Test public void indexIsZeroWithSeveralArguments() {
+    try {
+      CodeBlock.builder().add("$0T", String.class, Integer.class).build();
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("index 0 for '$0T' not in range (received 2 arguments)");
+    }
+  }
+
+  @Test public void unusedIndexBeyondSixtyFour() {
+    Object[] args = new Object[70];
+    StringBuilder format = new StringBuilder();
+    for (int i = 0; i < args.length; i++) {
+      args[i] = i;
+      if (i != 67) format.append('$').append(i + 1).append('L');
+    }
+    try {
+      CodeBlock.builder().add(format.toString(), args).build();
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("unused argument: $68");
+    }
+  }
+
+  @Test public void addStatementMatchesSeparateParts() {
+    CodeBlock statement = CodeBlock.builder()
+        .addStatement("$T s = $S", String.class, "taco")
+        .build();
+    CodeBlock parts = CodeBlock.builder()
+        .add("$[")
+        .add("$T s = $S", String.class, "taco")
+        .add(";\n$]")
+        .build();
+    assertThat(statement.toString()).isEqualTo("java.lang.String s = \"taco\";\n");
+    assertThat(statement.structurallyEquals(parts)).isTrue();
+  }
+
   @Test public void indexIsNegative() {
     try {
       CodeBlock.builder().add("$-1T", String.class).build();
@@ -273,6 +395,189 @@ public final class CodeBlockTest {
     }
   }
 
+  @Test public void largeBlocksAreSharedNotCopied() {
+    CodeBlock.Builder builder = CodeBlock.builder();
+    for (int i = 0; i < 10; i++) {
+      builder.addStatement("int i$L = $L", i, i);
+    }
+    CodeBlock large = builder.build();
+    assertThat(large.toBuilder().build()).isSameInstanceAs(large);
+
+    CodeBlock composed = CodeBlock.builder()
+        .add(large)
+        .add("// between\n")
+        .add(large)
+        .build();
+    assertThat(composed.leaves()).containsExactly(large, CodeBlock.of("// between\n"), large);
+
+    CodeBlock.Builder flat = CodeBlock.builder();
+    for (int i = 0; i < 10; i++) {
+      flat.add("$[int i$L = $L;\n$]", i, i);
+    }
+    flat.add("// between\n");
+    for (int i = 0; i < 10; i++) {
+      flat.add("$[int i$L = $L;\n$]", i, i);
+    }
+    assertThat(composed.structurallyEquals(flat.build())).isTrue();
+    assertThat(composed.toString()).isEqualTo(flat.build().toString());
+  }
+
+  @Test public void deeplyNestedBlocks() {
+    CodeBlock.Builder builder = CodeBlock.builder();
+    for (int i = 0; i < 20; i++) {
+      builder.add("$L", i);
+    }
+    CodeBlock line = builder.add("\n").build();
+    CodeBlock block = line;
+    for (int i = 0; i < 10_000; i++) {
+      block = block.toBuilder().add(line).build();
+    }
+    assertThat(block.toString()).hasLength(10_001 * line.toString().length());
+  }
+
+  @Test public void template() {
+    CodeBlock.Template template = CodeBlock.template("$T $N = $S;\n$>$L$<");
+    CodeBlock block = template.bind(String.class, "taco", "tortilla", "// crunchy");
+    CodeBlock expected =
+        CodeBlock.of("$T $N = $S;\n$>$L$<", String.class, "taco", "tortilla", "// crunchy");
+    assertThat(block.structurallyEquals(expected)).isTrue();
+    assertThat(block.toString()).isEqualTo(expected.toString());
+    assertThat(template.toString()).isEqualTo("$T $N = $S;\n$>$L$<");
+  }
+
+  @Test public void templateWithIndexes() {
+    CodeBlock.Template template = CodeBlock.template("$1T.out.println($2S + $1S)");
+    assertThat(template.bind(ClassName.get(System.class), "taco").toString())
+        .isEqualTo("java.lang.System.out.println(\"taco\" + \"java.lang.System\")");
+  }
+
+  @Test public void templateReportsFormatErrors() {
+    try {
+      CodeBlock.template("$1T $3T");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("unused argument: $2");
+    }
+    try {
+      CodeBlock.template("$T $1T");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat()
+          .isEqualTo("cannot mix indexed and positional parameters");
+    }
+    try {
+      CodeBlock.template("$1 taco");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("invalid format string: '$1 taco'");
+    }
+  }
+
+  @Test public void templateRejectsHugeIndex() {
+    try {
+      CodeBlock.template("$999999999L");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat()
+          .isEqualTo("index 999999999 for '$999999999L' not in range");
+    }
+  }
+
+  @Test public void indexTooLargeForAnInt() {
+    try {
+      CodeBlock.builder().add("$99999999999999999999L", "a").build();
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("index 99999999999999999999 for "
+          + "'$99999999999999999999L' not in range (received 1 arguments)");
+    }
+  }
+
+  @Test public void templateIndexTooLargeForAnInt() {
+    try {
+      CodeBlock.template("$4294967297L");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat()
+          .isEqualTo("index 4294967297 for '$4294967297L' not in range");
+    }
+  }
+
+  @Test public void templateReportsAllUnusedArguments() {
+    try {
+      CodeBlock.template("$20L and some text to make room for more arguments");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat()
+          .isEqualTo("unused arguments: $1, $2, $3, $4, $5, $6, $7, $8, $9, $10, $11, $12, $13, "
+              + "$14, $15, $16, $17, $18, $19");
+    }
+  }
+
+  @Test public void templateChecksArguments() {
+    CodeBlock.Template template = CodeBlock.template("$N($T)");
+    try {
+      template.bind("taco");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat()
+          .isEqualTo("'$N($T)' requires 2 arguments, received 1");
+    }
+    try {
+      template.bind("taco", "salsa");
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("expected type but was salsa");
+    }
+    try {
+      template.bindNamed(new LinkedHashMap<>());
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("'$N($T)' requires positional arguments");
+    }
+  }
+
+  @Test public void namedTemplate() {
+    CodeBlock.Template template =
+        CodeBlock.namedTemplate("$pipe:T.out.println($text:S + $text:S);$$");
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("pipe", System.class);
+    map.put("text", "tacos");
+    assertThat(template.bindNamed(map).toString())
+        .isEqualTo("java.lang.System.out.println(\"tacos\" + \"tacos\");$");
+
+    map.remove("text");
+    try {
+      template.bindNamed(map);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("Missing named argument for $text");
+    }
+  }
+
+  @Test public void namedTemplateReportsErrorsLikeAddNamed() {
+    CodeBlock.Template template = CodeBlock.namedTemplate("$Pipe:T");
+    try {
+      template.bindNamed(Collections.singletonMap("Pipe", System.class));
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat()
+          .isEqualTo("argument 'Pipe' must start with a lowercase character");
+    }
+    try {
+      template.bindNamed(Collections.singletonMap("pipe", System.class));
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("Missing named argument for $Pipe");
+    }
+    try {
+      CodeBlock.builder().addNamed("$Pipe:T", Collections.singletonMap("pipe", System.class));
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("Missing named argument for $Pipe");
+    }
+  }
+
   @Test public void sameIndexCanBeUsedWithDifferentFormats() {
     CodeBlock block = CodeBlock.builder()
         .add("$1T.out.println($1S)", ClassName.get(System.class))
@@ -330,6 +635,19 @@ public final class CodeBlockTest {
     assertThat(joined.toString()).isEqualTo("\"hello\"");
   }
 
+  @Test public void joiningParsesSeparatorOnlyWhenNeeded() {
+    // Fewer than two blocks never need a separator, so an invalid one isn't reported.
+    assertThat(Stream.<CodeBlock>empty().collect(CodeBlock.joining("$T")).isEmpty()).isTrue();
+    CodeBlock single = Stream.of(CodeBlock.of("a")).collect(CodeBlock.joining("$"));
+    assertThat(single.toString()).isEqualTo("a");
+    try {
+      Stream.of(CodeBlock.of("a"), CodeBlock.of("b")).collect(CodeBlock.joining("$"));
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("dangling format characters in '$'");
+    }
+  }
+
   @Test public void joiningWithPrefixAndSuffix() {
     List<CodeBlock> codeBlocks = new ArrayList<>();
     codeBlocks.add(CodeBlock.of("$S", "hello"));
@@ -340,6 +658,44 @@ public final class CodeBlockTest {
     assertThat(joined.toString()).isEqualTo("start {\"hello\" || world.World || need tacos} end");
   }
 
+  @Test public void joiningInParallel() {
+    List<CodeBlock> codeBlocks = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      codeBlocks.add(CodeBlock.of("$S", "s" + i));
+    }
+
+    CodeBlock sequential = codeBlocks.stream().collect(CodeBlock.joining(", "));
+    CodeBlock parallel = codeBlocks.parallelStream().collect(CodeBlock.joining(", "));
+    assertThat(parallel.toString()).isEqualTo(sequential.toString());
+    assertThat(parallel).isEqualTo(sequential);
+  }
+
+  @Test public void joiningWithPrefixAndSuffixInParallel() {
+    List<CodeBlock> codeBlocks = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      codeBlocks.add(CodeBlock.of("$L", i));
+    }
+
+    CodeBlock sequential = codeBlocks.stream()
+        .collect(CodeBlock.joining(", ", "{", "}"));
+    CodeBlock parallel = codeBlocks.parallelStream()
+        .collect(CodeBlock.joining(", ", "{", "}"));
+    assertThat(parallel.toString()).isEqualTo(sequential.toString());
+    assertThat(parallel.toString()).startsWith("{0, 1, 2, ");
+    assertThat(parallel.toString()).endsWith(", 9999}");
+  }
+
+  @Test public void joiningCollectorIsReusable() {
+    List<CodeBlock> codeBlocks = new ArrayList<>();
+    codeBlocks.add(CodeBlock.of("a"));
+    codeBlocks.add(CodeBlock.of("b"));
+
+    Collector<CodeBlock, ?, CodeBlock> joining = CodeBlock.joining(", ", "(", ")");
+    assertThat(codeBlocks.stream().collect(joining).toString()).isEqualTo("(a, b)");
+    assertThat(codeBlocks.stream().collect(joining).toString()).isEqualTo("(a, b)");
+    assertThat(Stream.<CodeBlock>empty().collect(joining).toString()).isEqualTo("()");
+  }
+
   @Test public void clear() {
     CodeBlock block = CodeBlock.builder()
         .addStatement("$S", "Test string")
@@ -348,4 +704,15 @@ public final class CodeBlockTest {
 
     assertThat(block.toString()).isEmpty();
   }
+
+  @Test public void toBuilderKeepsEveryFormatPart() {
+    CodeBlock block = CodeBlock.builder()
+        .add("$>$[$N = $L$W+ $S$Z + $T.MAX_VALUE + $$;\n$]$<", "taco", 1, "salsa", Integer.class)
+        .build();
+    CodeBlock copy = block.toBuilder().build();
+    assertThat(copy.structurallyEquals(block)).isTrue();
+    assertThat(CodeBlock.builder().add(block).build().structurallyEquals(block)).isTrue();
+    assertThat(copy.toString())
+        .isEqualTo("taco = 1 + \"salsa\" + java.lang.Integer.MAX_VALUE + $;\n");
+  }
 }
@@ -3,6 +3,8 @@ package com.squareup.javapoet;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static com.google.common.truth.Truth.assertThat;
 
@@ -20,4 +22,79 @@ public class CodeWriterTest {
                         " * B\n" +
                         " */\n");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void emitsEveryLineTerminatorAsNewline() throws IOException {
+        StringBuilder out = new StringBuilder();
+        new CodeWriter(out).emit("a\r\nb\rc\u000Bd\fe\u0085f\u2028g\u2029h\n\ni");
+        assertThat(out.toString()).isEqualTo("a\nb\nc\nd\ne\nf\ng\nh\n\ni");
+    }
+
+    @Test
+    public void emptyLinesAreNotIndented() throws IOException {
+        StringBuilder out = new StringBuilder();
+        new CodeWriter(out).indent().emit("a\n\nb\n").unindent();
+        assertThat(out.toString()).isEqualTo("a\n\n  b\n");
+    }
+
+    @Test
+    public void deepIndentation() throws IOException {
+        StringBuilder out = new StringBuilder();
+        CodeWriter codeWriter = new CodeWriter(out, "\t", Collections.emptySet(),
+                Collections.emptySet());
+        for (int i = 0; i < 40; i++) {
+            codeWriter.emit("{\n").indent();
+        }
+        codeWriter.emit("x\n");
+        for (int i = 0; i < 40; i++) {
+            codeWriter.unindent().emit("}\n");
+        }
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            expected.append(repeat('\t', i)).append("{\n");
+        }
+        expected.append(repeat('\t', 40)).append("x\n");
+        for (int i = 39; i >= 0; i--) {
+            expected.append(repeat('\t', i)).append("}\n");
+        }
+        assertThat(out.toString()).isEqualTo(expected.toString());
+    }
+
+    @Test
+    public void unwrappedWriterWritesDirectly() throws IOException {
+        StringBuilder out = new StringBuilder();
+        CodeWriter codeWriter = new CodeWriter(out, "  ", CodeWriter.NO_COLUMN_LIMIT,
+                Collections.emptyMap(), Collections.emptySet(), Collections.emptySet());
+        codeWriter.emit(CodeBlock.of("a($L,$W$L,$Z$L)", "b", "c", "d"));
+        assertThat(out.toString()).isEqualTo("a(b, c,d)");
+        codeWriter.emit(CodeBlock.of("x"), true);
+        codeWriter.emit(CodeBlock.of("y\n"), true);
+        assertThat(out.toString()).isEqualTo("a(b, c,d)x\ny\n");
+    }
+
+    @Test
+    public void collectingImportsVisitsTypesOnly() throws IOException {
+        ClassName list = ClassName.get("java.util", "List");
+        ClassName date = ClassName.get("java.util", "Date");
+        ClassName sqlDate = ClassName.get("java.sql", "Date");
+        CodeWriter codeWriter = CodeWriter.collectingImports(
+                "  ", Collections.emptySet(), Collections.emptySet());
+        codeWriter.emit("$S $T$W$L $L", "unescaped \"$T\"", list,
+                CodeBlock.of("$T", date), new Object() {
+                    @Override public String toString() {
+                        throw new AssertionError();
+                    }
+                });
+        codeWriter.emit("$T", sqlDate);
+        assertThat(codeWriter.suggestedImports().values())
+                .containsExactly(list, date)
+                .inOrder();
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -22,7 +22,18 @@ import java.io.IOException;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.Modifier;
 import org.junit.Rule;
@@ -223,4 +234,98 @@ public final class FileWritingTest {
     // Cast to avoid ambiguity between assertThat(Path) and assertThat(Iterable<?>)
     assertThat((Iterable<?>) filePath).isEqualTo(fsRoot.resolve(fs.getPath("foo", "Taco.java")));
   }
+
+  @Test public void writeToPathIfChanged() throws IOException {
+    JavaFile javaFile = JavaFile.builder("foo", TypeSpec.classBuilder("Taco").build()).build();
+    Path path = fsRoot.resolve(fs.getPath("foo", "Taco.java"));
+    assertThat(javaFile.writeToPathIfChanged(fsRoot)).isTrue();
+    assertThat(new String(Files.readAllBytes(path), UTF_8)).isEqualTo(javaFile.toString());
+
+    FileTime lastModified = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(path, lastModified);
+    assertThat(javaFile.writeToPathIfChanged(fsRoot)).isFalse();
+    assertThat(Files.getLastModifiedTime(path)).isEqualTo(lastModified);
+
+    JavaFile changed = javaFile.toBuilder().addFileComment("Generated").build();
+    assertThat(changed.writeToPathIfChanged(fsRoot)).isTrue();
+    assertThat(new String(Files.readAllBytes(path), UTF_8)).isEqualTo(changed.toString());
+    assertThat(javaFile.writeToPathIfChanged(fsRoot)).isTrue();
+    assertThat(new String(Files.readAllBytes(path), UTF_8)).isEqualTo(javaFile.toString());
+  }
+
+  @Test public void writeAll() throws Exception {
+    List<JavaFile> javaFiles = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      TypeSpec type = TypeSpec.classBuilder("Taco" + i).build();
+      javaFiles.add(JavaFile.builder("foo" + (i % 3), type).build());
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Path> paths = JavaFiles.writeAll(javaFiles, fsRoot, executor);
+      assertThat(paths).hasSize(100);
+      for (int i = 0; i < 100; i++) {
+        Path path = fsRoot.resolve(fs.getPath("foo" + (i % 3), "Taco" + i + ".java"));
+        assertThat((Iterable<?>) paths.get(i)).isEqualTo(path);
+        assertThat(new String(Files.readAllBytes(path), UTF_8))
+            .isEqualTo(javaFiles.get(i).toString());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test public void writeAllReportsEachFailure() throws IOException {
+    JavaFile taco = JavaFile.builder("foo", TypeSpec.classBuilder("Taco").build()).build();
+    JavaFile salsa = JavaFile.builder("foo", TypeSpec.classBuilder("Salsa").build()).build();
+    JavaFile queso = JavaFile.builder("bar", TypeSpec.classBuilder("Queso").build()).build();
+    Path tacoPath = fsRoot.resolve(fs.getPath("foo", "Taco.java"));
+    Path quesoPath = fsRoot.resolve(fs.getPath("bar", "Queso.java"));
+    Files.createDirectories(tacoPath);
+    Files.createDirectories(quesoPath);
+    try {
+      JavaFiles.writeAll(Arrays.asList(taco, salsa, queso), fsRoot, Runnable::run);
+      fail();
+    } catch (IOException expected) {
+      assertThat(expected.getMessage()).isEqualTo("failed to write 2 of 3 files");
+      assertThat(expected.getSuppressed()).hasLength(2);
+      assertThat(expected.getSuppressed()[0].getMessage())
+          .isEqualTo("failed to write /foo/Taco.java");
+      assertThat(expected.getSuppressed()[1].getMessage())
+          .isEqualTo("failed to write /bar/Queso.java");
+    }
+    assertThat(Files.exists(fsRoot.resolve(fs.getPath("foo", "Salsa.java")))).isTrue();
+  }
+
+  @Test public void writeAllRunsRejectedTasks() throws IOException {
+    JavaFile taco = JavaFile.builder("foo", TypeSpec.classBuilder("Taco").build()).build();
+    JavaFile salsa = JavaFile.builder("foo", TypeSpec.classBuilder("Salsa").build()).build();
+    Executor rejectsAll = command -> {
+      throw new RejectedExecutionException("full");
+    };
+    JavaFiles.writeAll(Arrays.asList(taco, salsa), fsRoot, rejectsAll);
+    assertThat(Files.exists(fsRoot.resolve(fs.getPath("foo", "Taco.java")))).isTrue();
+    assertThat(Files.exists(fsRoot.resolve(fs.getPath("foo", "Salsa.java")))).isTrue();
+  }
+
+  @Test public void writeAllRunsDiscardedTasks() throws IOException {
+    JavaFile taco = JavaFile.builder("foo", TypeSpec.classBuilder("Taco").build()).build();
+    JavaFile salsa = JavaFile.builder("foo", TypeSpec.classBuilder("Salsa").build()).build();
+    // A shut down executor passes every task to its rejection policy, which drops it.
+    ThreadPoolExecutor discarding = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), new ThreadPoolExecutor.DiscardPolicy());
+    discarding.shutdown();
+    JavaFiles.writeAll(Arrays.asList(taco, salsa), fsRoot, discarding);
+    assertThat(Files.exists(fsRoot.resolve(fs.getPath("foo", "Taco.java")))).isTrue();
+    assertThat(Files.exists(fsRoot.resolve(fs.getPath("foo", "Salsa.java")))).isTrue();
+  }
+
+  @Test public void writeAllRejectsDuplicateFiles() throws IOException {
+    JavaFile taco = JavaFile.builder("foo", TypeSpec.classBuilder("Taco").build()).build();
+    try {
+      JavaFiles.writeAll(Arrays.asList(taco, taco), fsRoot, Runnable::run);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected.getMessage()).isEqualTo("/foo/Taco.java is written more than once");
+    }
+  }
 }
@@ -16,6 +16,7 @@
 package com.squareup.javapoet;
 
 import java.io.File;
+import java.util.ArrayList;
 import com.google.testing.compile.CompilationRule;
 import java.util.Collections;
 import java.util.Date;
@@ -33,6 +34,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
 
 @RunWith(JUnit4.class)
 public final class JavaFileTest {
@@ -43,6 +45,29 @@ public final class JavaFileTest {
     return compilation.getElements().getTypeElement(clazz.getCanonicalName());
   }
 
+  @Test public void importStaticAcrossComposedBlocks() {
+    CodeBlock.Builder declarations = CodeBlock.builder();
+    for (int i = 0; i < 10; i++) {
+      declarations.addStatement("int i$L = $L", i, i);
+    }
+    declarations.add("$T<$T> list = $T", List.class, String.class, Collections.class);
+    CodeBlock body = CodeBlock.builder()
+        .add(declarations.build())
+        .add(".emptyList();\n")
+        .build();
+    assertThat(body.children).isNotNull();
+
+    TypeSpec taco = TypeSpec.classBuilder("Taco")
+        .addMethod(MethodSpec.methodBuilder("salsa").addCode(body).build())
+        .build();
+    JavaFile source = JavaFile.builder("com.squareup.tacos", taco)
+        .addStaticImport(Collections.class, "*")
+        .build();
+    assertThat(source.toString()).contains(""
+        + "    int i9 = 9;\n"
+        + "    List<String> list = emptyList();\n");
+  }
+
   @Test public void importStaticReadmeExample() {
     ClassName hoverboard = ClassName.get("com.mattel", "Hoverboard");
     ClassName namedBoards = ClassName.get("com.mattel", "Hoverboard", "Boards");
@@ -988,6 +1013,123 @@ public final class JavaFileTest {
     }
   }
 
+  @Test public void singlePass() {
+    ClassName hoverboard = ClassName.get("com.mattel", "Hoverboard");
+    ClassName namedBoards = ClassName.get("com.mattel", "Hoverboard", "Boards");
+    ClassName otherHoverboard = ClassName.get("com.hasbro", "Hoverboard");
+    ClassName list = ClassName.get("java.util", "List");
+    TypeName listOfHoverboards = ParameterizedTypeName.get(list, hoverboard);
+    TypeSpec hello = TypeSpec.classBuilder("HelloWorld")
+        .addJavadoc("Uses {@link $T} and {@link $T}.\n", hoverboard, Date.class)
+        .addMethod(MethodSpec.methodBuilder("beyond")
+            .returns(listOfHoverboards)
+            .addTypeVariable(TypeVariableName.get("List"))
+            .addParameter(list, "boards")
+            .addStatement("$T result = new $T<>()", listOfHoverboards, ArrayList.class)
+            .addStatement("result.add($T.createNimbus($T.THUNDERBOLT))", hoverboard, namedBoards)
+            .addStatement("result.add(new $T())", otherHoverboard)
+            .addStatement("return $T.emptyList()", Collections.class)
+            .build())
+        .addType(TypeSpec.classBuilder("Date").build())
+        .build();
+    JavaFile.Builder builder = JavaFile.builder("com.example.helloworld", hello)
+        .addFileComment("Generated from $T.", ClassName.get("com.example", "Source"))
+        .addStaticImport(hoverboard, "createNimbus")
+        .skipJavaLangImports(true);
+    String twoPasses = builder.build().toString();
+    String singlePass = builder.singlePass(true).build().toString();
+    assertThat(singlePass).isEqualTo(twoPasses);
+    assertThat(singlePass).isEqualTo(""
+        + "// Generated from Source.\n"
+        + "package com.example.helloworld;\n"
+        + "\n"
+        + "import static com.mattel.Hoverboard.createNimbus;\n"
+        + "\n"
+        + "import com.example.Source;\n"
+        + "import com.mattel.Hoverboard;\n"
+        + "import java.util.ArrayList;\n"
+        + "import java.util.Collections;\n"
+        + "\n"
+        + "/**\n"
+        + " * Uses {@link Hoverboard} and {@link java.util.Date}.\n"
+        + " */\n"
+        + "class HelloWorld {\n"
+        + "  <List> java.util.List<Hoverboard> beyond(java.util.List boards) {\n"
+        + "    java.util.List<Hoverboard> result = new ArrayList<>();\n"
+        + "    result.add(createNimbus(Hoverboard.Boards.THUNDERBOLT));\n"
+        + "    result.add(new com.hasbro.Hoverboard());\n"
+        + "    return Collections.emptyList();\n"
+        + "  }\n"
+        + "\n"
+        + "  class Date {\n"
+        + "  }\n"
+        + "}\n");
+  }
+
+  @Test public void singlePassWrapsLikeTwoPasses() {
+    ClassName longName = ClassName.get("com.example.a.very.long.package_name", "SomeLongTypeName");
+    MethodSpec.Builder method = MethodSpec.methodBuilder("call")
+        .addStatement("$T.$N($T.a(), $T.b(), $T.c())", longName, "wrapsOnlyWhenQualified",
+            longName, longName, longName);
+    for (int i = 0; i < 8; i++) {
+      method.addParameter(longName, "parameter" + i);
+    }
+    TypeSpec taco = TypeSpec.classBuilder("Taco")
+        .addMethod(method.build())
+        .build();
+    JavaFile.Builder builder = JavaFile.builder("com.squareup.tacos", taco);
+    assertThat(builder.singlePass(true).build().toString())
+        .isEqualTo(builder.singlePass(false).build().toString());
+  }
+
+  @Test public void columnLimit() {
+    TypeSpec taco = TypeSpec.classBuilder("Taco")
+        .addMethod(MethodSpec.methodBuilder("call")
+            .addStatement("eat($L,$W$L,$W$L)", "lettuce", "tomato", "cheese")
+            .build())
+        .build();
+    JavaFile.Builder builder = JavaFile.builder("com.squareup.tacos", taco);
+    assertThat(builder.build().toString()).contains("    eat(lettuce, tomato, cheese);\n");
+    assertThat(builder.columnLimit(30).build().toString()).contains(""
+        + "    eat(lettuce, tomato,\n"
+        + "        cheese);\n");
+
+    JavaFile neverWrapped = builder.lineWrapping(JavaFile.LineWrapping.NEVER).build();
+    assertThat(neverWrapped.toString()).contains("    eat(lettuce, tomato, cheese);\n");
+    assertThat(neverWrapped.toBuilder().singlePass(true).build().toString())
+        .isEqualTo(neverWrapped.toString());
+    assertThat(neverWrapped.toBuilder().lineWrapping(JavaFile.LineWrapping.AT_COLUMN_LIMIT)
+        .build().toString()).contains("    eat(lettuce, tomato,\n");
+  }
+
+  @Test public void neverWrapKeepsLongLines() {
+    ClassName longName = ClassName.get("com.example.a.very.long.package_name", "SomeLongTypeName");
+    MethodSpec.Builder method = MethodSpec.methodBuilder("call");
+    for (int i = 0; i < 8; i++) {
+      method.addParameter(longName, "parameter" + i);
+    }
+    TypeSpec taco = TypeSpec.classBuilder("Taco")
+        .addMethod(method.build())
+        .build();
+    String source = JavaFile.builder("com.squareup.tacos", taco)
+        .lineWrapping(JavaFile.LineWrapping.NEVER)
+        .build()
+        .toString();
+    assertThat(source).contains("  void call(SomeLongTypeName parameter0, SomeLongTypeName parameter1,"
+        + " SomeLongTypeName parameter2,");
+    assertThat(source).doesNotContain("\n      SomeLongTypeName");
+  }
+
+  @Test public void columnLimitMustBePositive() {
+    TypeSpec taco = TypeSpec.classBuilder("Taco").build();
+    try {
+      JavaFile.builder("com.squareup.tacos", taco).columnLimit(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected).hasMessageThat().isEqualTo("columnLimit must be positive: 0");
+    }
+  }
+
   // Regression test for case raised here: https://github.com/square/javapoet/issues/77#issuecomment-519972404
   @Test
   public void avoidClashes_mapEntry() {
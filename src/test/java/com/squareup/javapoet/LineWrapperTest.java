@@ -15,6 +15,7 @@
  */
 package com.squareup.javapoet;
 
+import java.io.StringWriter;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -33,6 +34,35 @@ public final class LineWrapperTest {
     assertThat(out.toString()).isEqualTo("abcde\n    fghij");
   }
 
+  @Test public void appendRange() throws Exception {
+    StringBuffer out = new StringBuffer();
+    LineWrapper lineWrapper = new LineWrapper(out, "  ", 10);
+    lineWrapper.append("xabcdex", 1, 6);
+    lineWrapper.wrappingSpace(2);
+    lineWrapper.append("xfghij\nklx", 1, 7);
+    lineWrapper.append("xfghij\nklx", 7, 9);
+    lineWrapper.close();
+    assertThat(out.toString()).isEqualTo("abcde\n    fghij\nkl");
+    assertThat(lineWrapper.lastChar()).isEqualTo('l');
+  }
+
+  @Test public void writerReceivesRangesWithoutCopies() throws Exception {
+    StringWriter out = new StringWriter() {
+      @Override public StringWriter append(CharSequence csq, int start, int end) {
+        throw new AssertionError("copies " + csq.subSequence(start, end));
+      }
+    };
+    LineWrapper lineWrapper = new LineWrapper(out, "  ", 10);
+    lineWrapper.append("xabcdex", 1, 6);
+    lineWrapper.wrappingSpace(2);
+    lineWrapper.append("fghij");
+    lineWrapper.wrappingSpace(2);
+    lineWrapper.append("k");
+    lineWrapper.close();
+    assertThat(out.toString()).isEqualTo("abcde\n    fghij\n    k");
+    assertThat(lineWrapper.lastChar()).isEqualTo('k');
+  }
+
   @Test public void noWrap() throws Exception {
     StringBuffer out = new StringBuffer();
     LineWrapper lineWrapper = new LineWrapper(out, "  ", 10);
@@ -289,6 +289,16 @@ public final class MethodSpecTest {
     assertThat(a.hashCode()).isEqualTo(b.hashCode());
   }
 
+  @Test public void toStringIsCached() {
+    MethodSpec methodSpec = MethodSpec.methodBuilder("taco")
+        .addStatement("return $S", "salsa")
+        .returns(String.class)
+        .build();
+    String rendered = methodSpec.toString();
+    assertThat(methodSpec.toString()).isSameInstanceAs(rendered);
+    assertThat(methodSpec.code.toString()).isSameInstanceAs(methodSpec.code.toString());
+  }
+
   @Test public void withoutParameterJavaDoc() {
     MethodSpec methodSpec = MethodSpec.methodBuilder("getTaco")
         .addModifiers(Modifier.PRIVATE)
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javax.lang.model.element.Modifier;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public final class ModifierSetTest {
+  @Test public void iteratesInDeclarationOrder() {
+    Set<Modifier> modifiers = ModifierSet.of(
+        Arrays.asList(Modifier.FINAL, Modifier.STATIC, Modifier.PUBLIC, Modifier.STATIC));
+    assertThat(modifiers)
+        .containsExactly(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+        .inOrder();
+    assertThat(modifiers.contains(Modifier.STATIC)).isTrue();
+    assertThat(modifiers.contains(Modifier.PRIVATE)).isFalse();
+  }
+
+  @Test public void equalsOtherSets() {
+    Set<Modifier> modifiers = ModifierSet.of(Modifier.PUBLIC, Modifier.ABSTRACT);
+    Set<Modifier> linked = new LinkedHashSet<>(Arrays.asList(Modifier.ABSTRACT, Modifier.PUBLIC));
+    assertThat(modifiers).isEqualTo(linked);
+    assertThat(linked).isEqualTo(modifiers);
+    assertThat(modifiers.hashCode()).isEqualTo(linked.hashCode());
+    assertThat(modifiers).isEqualTo(EnumSet.of(Modifier.PUBLIC, Modifier.ABSTRACT));
+    assertThat(ModifierSet.of(Collections.emptySet())).isSameInstanceAs(ModifierSet.EMPTY);
+  }
+
+  @Test public void unionReusesSuperset() {
+    ModifierSet publicStatic = ModifierSet.of(Modifier.PUBLIC, Modifier.STATIC);
+    ModifierSet statik = ModifierSet.of(Modifier.STATIC);
+    assertThat(ModifierSet.union(statik, publicStatic)).isSameInstanceAs(publicStatic);
+    assertThat(ModifierSet.union(publicStatic, ModifierSet.EMPTY)).isSameInstanceAs(publicStatic);
+    assertThat(ModifierSet.union(statik, ModifierSet.of(Modifier.FINAL)))
+        .containsExactly(Modifier.STATIC, Modifier.FINAL);
+  }
+
+  @Test public void isImmutable() {
+    Set<Modifier> modifiers = ModifierSet.of(Modifier.PUBLIC);
+    try {
+      modifiers.add(Modifier.FINAL);
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+    try {
+      modifiers.iterator().remove();
+      fail();
+    } catch (UnsupportedOperationException | IllegalStateException expected) {
+    }
+  }
+}
@@ -110,6 +110,27 @@ public class TypeNameTest {
         TestGeneric.class.getCanonicalName() + ".NestedNonGeneric");
   }
 
+  @Test public void typeVariablesAreConvertedOnce() throws Exception {
+    Method recursiveEnum = getClass().getDeclaredMethod("generic", Enum[].class);
+    java.lang.reflect.TypeVariable<?> e = recursiveEnum.getTypeParameters()[0];
+    TypeVariableName typeVariableName = TypeVariableName.get(e);
+    assertThat(TypeVariableName.get(e)).isSameInstanceAs(typeVariableName);
+    assertThat(typeVariableName.bounds.toString()).isEqualTo("[java.lang.Enum<E>]");
+
+    // Other reflective types are converted each time, but share the type variables they use.
+    Type arrayOfE = recursiveEnum.getGenericParameterTypes()[0];
+    ArrayTypeName arrayTypeName = (ArrayTypeName) TypeName.get(arrayOfE);
+    assertThat(arrayTypeName.componentType).isSameInstanceAs(typeVariableName);
+    assertThat(TypeName.get(arrayOfE)).isEqualTo(arrayTypeName);
+  }
+
+  @Test public void classNamesAreConvertedOnce() {
+    assertThat(ClassName.get(TestGeneric.Inner.class))
+        .isSameInstanceAs(ClassName.get(TestGeneric.Inner.class));
+    assertThat(TypeName.get(TestGeneric.Inner.class))
+        .isSameInstanceAs(ClassName.get(TestGeneric.Inner.class));
+  }
+
   @Test public void equalsAndHashCodePrimitive() {
     assertEqualsHashCodeAndToString(TypeName.BOOLEAN, TypeName.BOOLEAN);
     assertEqualsHashCodeAndToString(TypeName.BYTE, TypeName.BYTE);
@@ -2509,6 +2509,19 @@ public final class TypeSpecTest {
     assertThat(a.hashCode()).isEqualTo(b.hashCode());
   }
 
+  @Test public void equalsComparesTypeVariableBounds() {
+    TypeSpec a = TypeSpec.classBuilder("Taco")
+        .addTypeVariable(TypeVariableName.get("T", Number.class))
+        .build();
+    TypeSpec b = TypeSpec.classBuilder("Taco")
+        .addTypeVariable(TypeVariableName.get("T", Comparable.class))
+        .build();
+    assertThat(a.structurallyEquals(b)).isFalse();
+    assertThat(a.equals(b)).isFalse();
+    assertThat(a.equals(a.toBuilder().build())).isTrue();
+    assertThat(a.structurallyEquals(a.toBuilder().build())).isTrue();
+  }
+
   @Test public void classNameFactories() {
     ClassName className = ClassName.get("com.example", "Example");
     assertThat(TypeSpec.classBuilder(className).build().name).isEqualTo("Example");
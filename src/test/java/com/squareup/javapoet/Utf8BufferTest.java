@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.squareup.javapoet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+@RunWith(JUnit4.class)
+public final class Utf8BufferTest {
+  @Test public void ascii() throws IOException {
+    assertEncoded("public final class Taco {\n}\n");
+  }
+
+  @Test public void multiByte() throws IOException {
+    assertEncoded("Pi\u00f1ata\u00a1 \u20ac \u4e2d\u6587 \ud83c\udf2e");
+  }
+
+  @Test public void unpairedSurrogates() throws IOException {
+    assertEncoded("a\ud83cb");
+    assertEncoded("a\udf2eb");
+    assertEncoded("\udf2e\ud83c");
+    assertEncoded("a\ud83c");
+  }
+
+  @Test public void surrogatePairAcrossAppends() throws IOException {
+    Utf8Buffer buffer = new Utf8Buffer(1);
+    buffer.append("taco \ud83c").append('\udf2e').append("x\ud83c", 1, 2).append("\udf2ex", 0, 1);
+    assertThat(encoded(buffer)).isEqualTo("taco \ud83c\udf2e\ud83c\udf2e".getBytes(UTF_8));
+  }
+
+  @Test public void appendRange() throws IOException {
+    Utf8Buffer buffer = new Utf8Buffer(1);
+    buffer.append("xtaco\u00f1x", 1, 6);
+    assertThat(encoded(buffer)).isEqualTo("taco\u00f1".getBytes(UTF_8));
+  }
+
+  @Test public void sizeAndBytes() {
+    Utf8Buffer buffer = new Utf8Buffer(1);
+    buffer.append("\u00f1a");
+    assertThat(buffer.size()).isEqualTo(3);
+    assertThat(Arrays.copyOf(buffer.bytes(), buffer.size())).isEqualTo("\u00f1a".getBytes(UTF_8));
+  }
+
+  private static void assertEncoded(String s) throws IOException {
+    Utf8Buffer buffer = new Utf8Buffer(1);
+    buffer.append(s);
+    assertThat(encoded(buffer)).isEqualTo(s.getBytes(UTF_8));
+  }
+
+  private static byte[] encoded(Utf8Buffer buffer) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    buffer.writeTo(out);
+    return out.toByteArray();
+  }
+}
@@ -15,8 +15,16 @@
  */
 package com.squareup.javapoet;
 
+import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.junit.Test;
 
 public class UtilTest {
@@ -65,6 +73,62 @@ public class UtilTest {
     stringLiteral("e^{i\\\\pi}+1=0", "e^{i\\pi}+1=0", " ");
   }
 
+  @Test public void immutableListIsNotCopiedTwice() {
+    List<String> mutable = new ArrayList<>(Arrays.asList("a", null, "c"));
+    List<String> list = Util.immutableList(mutable);
+    mutable.set(0, "z");
+    assertThat(list).containsExactly("a", null, "c").inOrder();
+    assertThat(list).isEqualTo(Arrays.asList("a", null, "c"));
+    assertThat(Util.immutableList(list)).isSameInstanceAs(list);
+    assertThat(Util.immutableList(new ArrayList<String>()))
+        .isSameInstanceAs(Util.immutableList(new ArrayList<Integer>()));
+    try {
+      list.add("d");
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  @Test public void immutableSetIsNotCopiedTwice() {
+    Set<String> set = Util.immutableSet(Arrays.asList("b", "a", "b", "c"));
+    assertThat(set).containsExactly("b", "a", "c").inOrder();
+    assertThat(Util.immutableSet(set)).isSameInstanceAs(set);
+    try {
+      set.remove("a");
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+
+    List<Integer> many = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      many.add(i);
+    }
+    Set<Integer> large = Util.immutableSet(many);
+    assertThat(large).containsExactlyElementsIn(many).inOrder();
+    assertThat(large.contains(99)).isTrue();
+    assertThat(large.contains(100)).isFalse();
+  }
+
+  @Test public void immutableMapIsNotCopiedTwice() {
+    Map<String, List<String>> multimap = new LinkedHashMap<>();
+    multimap.put("b", new ArrayList<>(Arrays.asList("1")));
+    multimap.put("empty", new ArrayList<>());
+    multimap.put("a", new ArrayList<>(Arrays.asList("2", "3")));
+    Map<String, List<String>> immutable = Util.immutableMultimap(multimap);
+    assertThat(immutable.keySet()).containsExactly("b", "a").inOrder();
+    assertThat(Util.immutableMultimap(immutable)).isSameInstanceAs(immutable);
+    assertThat(Util.immutableMap(immutable)).isSameInstanceAs(immutable);
+    try {
+      immutable.entrySet().iterator().next().setValue(null);
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+
+    // A map of mutable lists is not a valid multimap, even if the map itself is immutable.
+    Map<String, List<String>> shallow = Util.immutableMap(multimap);
+    assertThat(Util.immutableMultimap(shallow)).isNotSameInstanceAs(shallow);
+  }
+
   void stringLiteral(String string) {
     stringLiteral(string, string, " ");
   }